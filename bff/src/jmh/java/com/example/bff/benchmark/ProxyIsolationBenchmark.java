@@ -0,0 +1,138 @@
+package com.example.bff.benchmark;
+
+import com.example.bff.service.AdaptiveConcurrencyLimiter;
+import com.example.bff.service.DownstreamBulkheads;
+import com.example.bff.service.GatewayProxyService;
+import com.example.bff.service.RequestCoalescer;
+import com.example.bff.service.RequestHedger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and throughput of calls to a healthy downstream while another downstream is slow.
+ * <p>
+ * {@code slowClients} requests to the slow downstream (500 ms per response) are kept in flight on
+ * the request executor, each resubmitted when it completes, as a crowd of clients would. Every
+ * benchmark call is one request to the fast downstream on the same executor:
+ * <ul>
+ *   <li>{@code platform} - a fixed pool of 200 threads, Tomcat's default; fast requests queue
+ *       behind the slow ones</li>
+ *   <li>{@code virtual} - a virtual thread per request; the slow downstream is bounded by its
+ *       bulkhead only</li>
+ * </ul>
+ * Both go through {@link DownstreamBulkheads} and {@link GatewayProxyService#send} as batch
+ * sub-requests do; the adaptive limit and hedging are off so they do not mask the thread model.
+ * The p99 is in the {@code SampleTime} results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class ProxyIsolationBenchmark {
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"0", "1000"})
+    public int slowClients;
+
+    private MockWebServer server;
+    private ExecutorService executor;
+    private DownstreamBulkheads bulkheads;
+    private GatewayProxyService proxyService;
+    private URI fastUri;
+    private URI slowUri;
+    private volatile boolean running;
+
+    @Setup
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                MockResponse response = new MockResponse().setBody("{\"ok\":true}");
+                return request.getPath().startsWith("/slow")
+                        ? response.setHeadersDelay(500, TimeUnit.MILLISECONDS)
+                        : response;
+            }
+        });
+        server.start();
+        fastUri = server.url("/fast/items").uri();
+        slowUri = server.url("/slow/items").uri();
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        bulkheads = new DownstreamBulkheads(new StandardEnvironment(), registry, true,
+                List.of("fast", "slow"), 200, 100);
+        proxyService = new GatewayProxyService(WebClient.builder(),
+                new RequestHedger(registry, false, List.of(), 0.95, 10, 5),
+                new RequestCoalescer(registry, false, 1024 * 1024, 1000),
+                new AdaptiveConcurrencyLimiter(registry, false, 100, 20, 800, 1.5, 0.2, 1000, 1),
+                registry, true);
+        executor = "virtual".equals(threads)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(200);
+
+        running = true;
+        for (int i = 0; i < slowClients; i++) {
+            executor.execute(this::slowClient);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        running = false;
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        server.shutdown();
+    }
+
+    @Benchmark
+    public int fastDownstream() throws Exception {
+        return executor.submit(() -> call(fastUri)).get();
+    }
+
+    private void slowClient() {
+        call(slowUri);
+        if (running) {
+            executor.execute(this::slowClient);
+        }
+    }
+
+    private int call(URI uri) {
+        try {
+            return bulkheads.execute(DownstreamBulkheads.downstreamOf(uri.getPath()),
+                    () -> proxyService.send(HttpMethod.GET, uri, "token", null)).getStatusCode().value();
+        } catch (ResponseStatusException e) {
+            return e.getStatusCode().value();
+        }
+    }
+}
@@ -1,20 +1,36 @@
 package com.example.bff.config;
 
+import com.example.bff.service.SessionCodec;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
 public class RedisConfig {
 
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory, SessionCodec sessionCodec) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
         template.setKeySerializer(new StringRedisSerializer());
-        // Default value serializer is JdkSerializationRedisSerializer, which works for Serializable objects like OAuth2AuthorizedClient
+        // Compact session format instead of JDK serialization; still reads legacy JDK-serialized entries
+        template.setValueSerializer(sessionCodec);
         return template;
     }
+
+    /**
+     * Pub/sub container used to propagate session invalidations between BFF instances; not created
+     * for the local session store, which has no other instances to reach.
+     */
+    @Bean
+    @ConditionalOnExpression("'${bff.session.store:redis}' != 'local'")
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
 }
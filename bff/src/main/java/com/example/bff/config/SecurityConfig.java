@@ -1,6 +1,8 @@
 package com.example.bff.config;
 
+import com.example.bff.filter.RevokedLoginFilter;
 import com.example.bff.filter.TokenRefreshFilter;
+import com.example.bff.service.SessionRevocationList;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -36,6 +38,7 @@ import java.util.List;
  *       (allowing Angular to detect auth state) and redirects for browser navigation</li>
  *   <li>CORS configured to allow the Angular frontend with credentials</li>
  *   <li>CSRF protection enabled in production, disabled in dev for testing convenience</li>
+ *   <li>Logins of users whose sessions were all revoked are ended ({@link RevokedLoginFilter})</li>
  * </ul>
  */
 @Configuration
@@ -44,6 +47,7 @@ import java.util.List;
 public class SecurityConfig {
 
     private final TokenRefreshFilter tokenRefreshFilter;
+    private final SessionRevocationList revocationList;
     private final Environment env;
 
     @org.springframework.beans.factory.annotation.Value("${bff.cors.allowed-origins}")
@@ -57,16 +61,18 @@ public class SecurityConfig {
         http
             .cors(cors -> cors.configurationSource(corsConfigurationSource()))
             .addFilterBefore(tokenRefreshFilter, UsernamePasswordAuthenticationFilter.class)
+            // Logins of users revoked since ("log out everywhere", user deleted) no longer authenticate
+            .addFilterBefore(new RevokedLoginFilter(revocationList), UsernamePasswordAuthenticationFilter.class)
             .authorizeHttpRequests(auth -> auth
                 /*
-                 * We permit "/api/**" because these endpoints are protected manually
+                 * We permit "/api/**" (and "/bff/batch") because these endpoints are protected manually
                  * by the BffController and TokenRefreshFilter using the custom
                  * "BFF_SESSION" cookie and Redis lookup.
                  *
                  * This bypasses the standard JSESSIONID-based SecurityContext
                  * for these specific proxy endpoints.
                  */
-                .requestMatchers("/bff/login", "/bff/logout", "/bff/public/**", "/login/**", "/oauth2/**", "/bff/api/**", "/error", "/actuator/health").permitAll()
+                .requestMatchers("/bff/login", "/bff/logout", "/bff/logout/everywhere", "/bff/public/**", "/login/**", "/oauth2/**", "/bff/api/**", "/bff/batch", "/error", "/actuator/health").permitAll()
                 .anyRequest().authenticated())
             .oauth2Login(oauth2 -> oauth2
                 .defaultSuccessUrl("/bff/login/success", true)
@@ -0,0 +1,125 @@
+package com.example.bff.config;
+
+import com.example.bff.service.ClusterMessaging;
+import com.example.bff.service.HybridSessionStore;
+import com.example.bff.service.LocalClusterMessaging;
+import com.example.bff.service.LocalSessionExpiryIndex;
+import com.example.bff.service.LocalSubjectSessionIndex;
+import com.example.bff.service.OffHeapSessionStore;
+import com.example.bff.service.RedisClusterMessaging;
+import com.example.bff.service.RedisSessionExpiryIndex;
+import com.example.bff.service.RedisSessionStore;
+import com.example.bff.service.RedisSubjectSessionIndex;
+import com.example.bff.service.SessionCache;
+import com.example.bff.service.SessionCodec;
+import com.example.bff.service.SessionExpiryIndex;
+import com.example.bff.service.SessionStore;
+import com.example.bff.service.SubjectSessionIndex;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.session.MapSessionRepository;
+import org.springframework.session.Session;
+import org.springframework.session.config.annotation.web.http.EnableSpringHttpSession;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Selects the {@link SessionStore} with {@code bff.session.store}: {@code redis} (default), {@code local} or {@code hybrid},
+ * together with the collaborators that must live where the sessions live.
+ * <p>
+ * With {@code redis} and {@code hybrid}, pub/sub ({@link ClusterMessaging}), the subject and expiry
+ * indexes and Spring Session ({@code JSESSIONID}) use Redis. With {@code local} the BFF needs no Redis:
+ * all of them are kept in this process, and the off-heap store feeds the expiry index of the
+ * background refresh.
+ */
+@Configuration
+public class SessionStoreConfig {
+
+    @Bean
+    public ClusterMessaging clusterMessaging(@Value("${bff.session.store:redis}") String store,
+                                             StringRedisTemplate stringRedisTemplate,
+                                             ObjectProvider<RedisMessageListenerContainer> listenerContainer) {
+        return "local".equals(store)
+                ? new LocalClusterMessaging()
+                : new RedisClusterMessaging(stringRedisTemplate, listenerContainer.getObject());
+    }
+
+    @Bean
+    public SubjectSessionIndex subjectSessionIndex(@Value("${bff.session.store:redis}") String store,
+                                                   @Value("${bff.session.max-lifetime-minutes:720}") int maxLifetimeMinutes,
+                                                   StringRedisTemplate stringRedisTemplate) {
+        Duration maxLifetime = Duration.ofMinutes(maxLifetimeMinutes);
+        return "local".equals(store)
+                ? new LocalSubjectSessionIndex(maxLifetime)
+                : new RedisSubjectSessionIndex(stringRedisTemplate, maxLifetime);
+    }
+
+    @Bean
+    public SessionExpiryIndex sessionExpiryIndex(@Value("${bff.session.store:redis}") String store,
+                                                 StringRedisTemplate stringRedisTemplate) {
+        return "local".equals(store)
+                ? new LocalSessionExpiryIndex()
+                : new RedisSessionExpiryIndex(stringRedisTemplate);
+    }
+
+    @Bean
+    public SessionStore sessionStore(@Value("${bff.session.store:redis}") String store,
+                                     @Value("${bff.session.local.max-bytes:268435456}") long maxBytes,
+                                     @Value("${bff.session.local.sweep-interval-seconds:60}") long sweepIntervalSeconds,
+                                     RedisTemplate<String, Object> redisTemplate,
+                                     ClusterMessaging messaging,
+                                     SessionCodec sessionCodec,
+                                     SessionExpiryIndex expiryIndex,
+                                     SessionCache sessionCache,
+                                     MeterRegistry meterRegistry) {
+        Duration sweepInterval = Duration.ofSeconds(sweepIntervalSeconds);
+        return switch (store) {
+            case "redis" -> new RedisSessionStore(redisTemplate, sessionCodec, (RedisSessionExpiryIndex) expiryIndex);
+            case "local" -> new OffHeapSessionStore(sessionCodec, meterRegistry, maxBytes, sweepInterval,
+                    (LocalSessionExpiryIndex) expiryIndex);
+            case "hybrid" -> new HybridSessionStore(
+                    new RedisSessionStore(redisTemplate, sessionCodec, (RedisSessionExpiryIndex) expiryIndex),
+                    new OffHeapSessionStore(sessionCodec, meterRegistry, maxBytes, sweepInterval),
+                    sessionCache, messaging);
+            default -> throw new IllegalArgumentException(
+                    "Unknown bff.session.store '" + store + "', expected redis, local or hybrid");
+        };
+    }
+
+    /**
+     * Spring Session ({@code JSESSIONID}) in memory for the local store; Spring Boot's Redis-backed
+     * repository backs off when this one exists.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnProperty(name = "bff.session.store", havingValue = "local")
+    @EnableSpringHttpSession
+    static class LocalHttpSessionConfig {
+
+        private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+        @Bean
+        MapSessionRepository sessionRepository(@Value("${server.servlet.session.timeout:30m}") Duration timeout) {
+            MapSessionRepository repository = new MapSessionRepository(sessions);
+            repository.setDefaultMaxInactiveInterval(timeout);
+            return repository;
+        }
+
+        /**
+         * The map only drops expired sessions when they are read; abandoned ones are purged here.
+         */
+        @Scheduled(fixedDelayString = "${bff.session.local.sweep-interval-seconds:60}000")
+        void purgeExpiredSessions() {
+            sessions.values().removeIf(Session::isExpired);
+        }
+    }
+}
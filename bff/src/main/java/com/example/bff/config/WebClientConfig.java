@@ -1,14 +1,82 @@
 package com.example.bff.config;
 
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outbound HTTP client shared by the gateway proxy and the Keycloak token refresh.
+ * <p>
+ * All {@link WebClient}s built from this builder share one bounded, long-lived connection pool,
+ * so connections to the gateway are reused instead of churned (which exhausted ephemeral ports
+ * under load). Pool settings are under {@code bff.http-client.*}.
+ * <p>
+ * Pool metrics are published by Reactor Netty to the global Micrometer registry as
+ * {@code reactor.netty.connection.provider.*{name="bff-gateway"}}: total, active, idle and pending
+ * connections, plus {@code pending.connections.time} for the time spent acquiring a connection.
+ */
 @Configuration
 public class WebClientConfig {
 
+    static final String POOL_NAME = "bff-gateway";
+
+    @Value("${bff.http-client.max-connections:500}")
+    private int maxConnections;
+
+    @Value("${bff.http-client.pending-acquire-max-count:1000}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${bff.http-client.pending-acquire-timeout-ms:5000}")
+    private long pendingAcquireTimeoutMs;
+
+    @Value("${bff.http-client.max-idle-time-seconds:30}")
+    private long maxIdleTimeSeconds;
+
+    @Value("${bff.http-client.max-life-time-seconds:300}")
+    private long maxLifeTimeSeconds;
+
+    @Value("${bff.http-client.connect-timeout-ms:2000}")
+    private int connectTimeoutMs;
+
+    @Value("${bff.http-client.response-timeout-seconds:30}")
+    private long responseTimeoutSeconds;
+
+    @Value("${bff.http-client.protocols:HTTP11}")
+    private List<HttpProtocol> protocols;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider gatewayConnectionProvider() {
+        return ConnectionProvider.builder(POOL_NAME)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                // Close idle connections before the gateway does, so we never write to a half-closed socket
+                .maxIdleTime(Duration.ofSeconds(maxIdleTimeSeconds))
+                .maxLifeTime(Duration.ofSeconds(maxLifeTimeSeconds))
+                .evictInBackground(Duration.ofSeconds(maxIdleTimeSeconds))
+                .lifo()
+                .metrics(true)
+                .build();
+    }
+
     @Bean
-    public WebClient.Builder webClientBuilder() {
-        return WebClient.builder();
+    public WebClient.Builder webClientBuilder(ConnectionProvider gatewayConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(gatewayConnectionProvider)
+                .protocol(protocols.toArray(HttpProtocol[]::new))
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(Duration.ofSeconds(responseTimeoutSeconds));
+
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient));
     }
 }
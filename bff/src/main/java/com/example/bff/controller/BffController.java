@@ -1,7 +1,19 @@
 package com.example.bff.controller;
 
+import com.example.bff.dto.BatchRequest;
 import com.example.common.core.constant.SessionConstants;
+import com.example.bff.service.AdaptiveConcurrencyLimiter;
+import com.example.bff.service.BatchProxyService;
+import com.example.bff.service.CachingProxyService;
+import com.example.bff.service.DownstreamBulkheads;
+import com.example.bff.service.EventStreamProxy;
+import com.example.bff.service.GatewayProxyService;
+import com.example.bff.service.LoginPrefetchService;
+import com.example.bff.service.SessionContext;
+import com.example.bff.service.SessionContextResolver;
 import com.example.bff.service.SessionRedisService;
+import com.example.bff.service.SessionRevocationList;
+import com.example.bff.service.SlidingSessionService;
 import com.example.bff.util.JwtUtils;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -12,18 +24,17 @@ import org.springframework.core.env.Profiles;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
-import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.web.OAuth2AuthorizedClientRepository;
 import org.springframework.security.oauth2.core.oidc.user.OidcUser;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
 import java.net.URI;
@@ -31,6 +42,8 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Backend-for-Frontend (BFF) controller handling OAuth2 authentication and API proxying.
@@ -57,10 +70,23 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class BffController {
 
-    private final OAuth2AuthorizedClientService clientService;
+    // Gateway paths of the admin user deletions: keycloak-admin-service (/admin/** -> /api/**) and
+    // profile-service's AdminProfileController (/profile/** -> /api/**)
+    private static final Pattern ADMIN_USER_PATH = Pattern.compile("/(?:admin|profile/profile/admin)/users/([^/]+)");
+
+    private final OAuth2AuthorizedClientRepository clientRepository;
+
     private final SessionRedisService sessionService;
+    private final SessionContextResolver sessionContextResolver;
     private final JwtUtils jwtUtils;
-    private final WebClient.Builder webClientBuilder;
+    private final GatewayProxyService gatewayProxyService;
+    private final DownstreamBulkheads downstreamBulkheads;
+    private final CachingProxyService cachingProxyService;
+    private final BatchProxyService batchProxyService;
+    private final EventStreamProxy eventStreamProxy;
+    private final LoginPrefetchService loginPrefetchService;
+    private final SlidingSessionService slidingSessionService;
+    private final SessionRevocationList revocationList;
     private final Environment env;
 
     @Value("${bff.gateway.url}")
@@ -105,37 +131,48 @@ public class BffController {
      * This endpoint is called after Keycloak redirects back with an authorization code
      * and Spring Security exchanges it for tokens. It:
      * <ol>
-     *   <li>Stores the OAuth2 tokens in Redis (keyed by a unique JTI)</li>
-     *   <li>Stores the ID token separately for use during logout</li>
+     *   <li>Stores the OAuth2 tokens and the ID token (for logout) in the session store, keyed by a unique JTI</li>
+     *   <li>Starts the optional prefetch of the first page's data into the response cache</li>
+     *   <li>Drops the authorized client Spring Security kept for the handshake</li>
      *   <li>Issues a signed BFF_SESSION JWT cookie containing the JTI</li>
      *   <li>Redirects to the frontend application</li>
      * </ol>
      *
+     * If the tokens are gone (the handshake expired, or this login was already completed), the
+     * browser is sent back to the frontend login page instead.
+     *
      * @param auth The OAuth2 authentication token from Spring Security
+     * @param request The HTTP request holding this login's handshake
+     * @param response The HTTP response
      * @return Redirect to frontend with BFF_SESSION cookie set
      */
     @GetMapping("/login/success")
-    public ResponseEntity<?> loginSuccess(OAuth2AuthenticationToken auth) {
-        OAuth2AuthorizedClient client = clientService.loadAuthorizedClient(
-                auth.getAuthorizedClientRegistrationId(), auth.getName());
+    public ResponseEntity<?> loginSuccess(OAuth2AuthenticationToken auth,
+                                          HttpServletRequest request,
+                                          HttpServletResponse response) {
+        OAuth2AuthorizedClient client = clientRepository.loadAuthorizedClient(
+                auth.getAuthorizedClientRegistrationId(), auth, request);
+        if (client == null) {
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .header(HttpHeaders.LOCATION, frontendUrl + "/login?error=login_expired")
+                    .build();
+        }
 
         String jti = UUID.randomUUID().toString();
-        sessionService.save(jti, client);
 
-        // Store ID token for Keycloak logout
-        if (auth.getPrincipal() instanceof OidcUser oidcUser) {
-            String idTokenValue = oidcUser.getIdToken().getTokenValue();
-            sessionService.saveIdToken(jti, idTokenValue);
-        }
+        // Tokens and the ID token (for Keycloak logout) are stored in one Redis write
+        String idTokenValue = auth.getPrincipal() instanceof OidcUser oidcUser
+                ? oidcUser.getIdToken().getTokenValue()
+                : null;
+        sessionService.create(jti, client, idTokenValue);
+        // Warm the session's response cache while the browser follows the redirect
+        loginPrefetchService.prefetch(jti, client.getAccessToken().getTokenValue());
+        // The BFF session now owns the tokens; don't keep a second copy per login
+        clientRepository.removeAuthorizedClient(auth.getAuthorizedClientRegistrationId(), auth, request, response);
 
-        String sessionJwt = jwtUtils.issueSessionJwt(jti, auth);
+        String sessionJwt = jwtUtils.issueSessionJwt(jti, auth, client);
 
-        ResponseCookie cookie = ResponseCookie.from(SessionConstants.COOKIE_BFF_SESSION, sessionJwt)
-                .httpOnly(true)
-                .secure(cookieSecure)
-                .sameSite("Lax")
-                .path("/")
-                .build();
+        ResponseCookie cookie = slidingSessionService.sessionCookie(sessionJwt);
 
         return ResponseEntity.status(HttpStatus.FOUND)
                 .header(HttpHeaders.LOCATION, frontendUrl)
@@ -178,6 +215,8 @@ public class BffController {
                 if (jti != null) {
                     idToken = sessionService.loadIdToken(jti);
                     sessionService.delete(jti);
+                    // Encrypted cookies stay valid without the stored session; reject copies of it
+                    revocationList.revoke(jti);
                 }
             } catch (Exception e) {
                 // Ignore parsing errors on logout
@@ -225,27 +264,37 @@ public class BffController {
                 .build();
     }
 
-    @RequestMapping(value = "/api/**", method = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.DELETE, RequestMethod.PATCH})
-    public ResponseEntity<?> proxyRequest(
-            HttpServletRequest request,
+    /**
+     * Logs out like {@link #logout} and additionally revokes every other session of the user, on all
+     * devices and BFF instances.
+     * <p>
+     * The user is taken from the verified BFF_SESSION cookie; without a valid session this is a
+     * plain logout. POST only, so the CSRF protection applies and no cross-site link can trigger it;
+     * submit it as a form to follow the redirect to Keycloak.
+     */
+    @PostMapping("/logout/everywhere")
+    public ResponseEntity<?> logoutEverywhere(
             @CookieValue(name = SessionConstants.COOKIE_BFF_SESSION, required = false) String sessionJwt,
-            @RequestBody(required = false) byte[] body) {
-
-        if (sessionJwt == null) {
-            return buildErrorResponse(401, "MISSING_SESSION", "BFF_SESSION cookie not found");
+            HttpServletRequest request) {
+        SessionContext session = sessionContextResolver.resolve(request);
+        // Logout first: it needs this session's ID token for the Keycloak logout redirect
+        ResponseEntity<?> response = logout(sessionJwt, request);
+        if (session.isResolved()) {
+            sessionService.revokeAll(session.token().subject());
         }
+        return response;
+    }
 
-        String jti = jwtUtils.extractJti(sessionJwt);
-        if (jti == null) {
-            return buildErrorResponse(401, "INVALID_SESSION", "Failed to extract JTI from session JWT");
-        }
+    @RequestMapping(value = "/api/**", method = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.DELETE, RequestMethod.PATCH})
+    public ResponseEntity<?> proxyRequest(HttpServletRequest request) {
 
-        OAuth2AuthorizedClient client = sessionService.load(jti);
-        if (client == null) {
-            return buildErrorResponse(401, "SESSION_NOT_FOUND", "Session not found in Redis (expired or invalid)");
+        // Resolved once per request; TokenRefreshFilter has usually done this already
+        SessionContext session = sessionContextResolver.resolve(request);
+        if (!session.isResolved()) {
+            return sessionErrorResponse(session);
         }
 
-        String accessToken = client.getAccessToken().getTokenValue();
+        String accessToken = session.accessToken();
 
         // Extract the path after "/bff/api"
         // Example: /bff/api/profile -> /profile, /bff/api/profile/foo -> /profile/foo
@@ -255,29 +304,63 @@ public class BffController {
         String queryString = request.getQueryString();
         URI targetUri = URI.create(gatewayUrl + path + (queryString != null ? "?" + queryString : ""));
 
-        WebClient wc = webClientBuilder.build();
+        String downstream = DownstreamBulkheads.downstreamOf(path);
+        if (eventStreamProxy.accepts(request)) {
+            return downstreamBulkheads.execute(downstream,
+                    () -> eventStreamProxy.relay(request, targetUri, accessToken));
+        }
+        if (cachingProxyService.isCacheable(request, path)) {
+            try {
+                return downstreamBulkheads.execute(downstream,
+                        () -> cachingProxyService.get(request, targetUri, session.jti(), accessToken));
+            } catch (ResponseStatusException e) {
+                // Shed by a full bulkhead: a last known good copy beats a 503
+                if (e.getStatusCode().value() != HttpStatus.SERVICE_UNAVAILABLE.value()) {
+                    throw e;
+                }
+                return cachingProxyService.staleOr(request, targetUri, session.jti(), e);
+            }
+        }
 
+        // Writes through this session make its cached GET responses stale: dropped before the write, so
+        // no read of this session is answered from the cache while it runs, and again after it, in
+        // case a read that started before the write stored its response in the meantime
+        boolean write = !HttpMethod.GET.matches(request.getMethod());
+        if (write) {
+            cachingProxyService.invalidate(session.jti());
+        }
         try {
-            return wc.method(HttpMethod.valueOf(request.getMethod()))
-                    .uri(targetUri)
-                    .headers(h -> {
-                        h.setBearerAuth(accessToken);
-                        // Forward Content-Type header (critical for POST/PUT requests with bodies)
-                        // so the downstream service knows how to parse the payload (e.g., application/json).
-                        if (request.getContentType() != null) {
-                            h.setContentType(MediaType.parseMediaType(request.getContentType()));
-                        }
-                    })
-                    .bodyValue(body != null ? body : new byte[0])
-                    .retrieve()
-                    .toEntity(byte[].class)
-                    .block();
-        } catch (WebClientResponseException e) {
-            return ResponseEntity.status(e.getStatusCode())
-                    .body(e.getResponseBodyAsByteArray());
+            ResponseEntity<?> response = downstreamBulkheads.execute(downstream,
+                    () -> gatewayProxyService.forward(request, targetUri, accessToken));
+            revokeDeletedUserSessions(request, path, response);
+            return response;
+        } finally {
+            if (write) {
+                cachingProxyService.invalidate(session.jti());
+            }
         }
     }
 
+    /**
+     * Executes several gateway calls in one round trip.
+     * <p>
+     * The BFF session is resolved once for the whole batch; sub-requests are sent to the gateway in
+     * parallel (bounded by {@code bff.batch.concurrency}) and answered in request order, each with
+     * its own status. A failing sub-request does not fail the batch.
+     *
+     * @param batch sub-requests with method, gateway path (as after /bff/api) and optional JSON body
+     * @return one response per sub-request, or 401 if the session is missing or invalid
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> batch(HttpServletRequest request, @RequestBody BatchRequest batch) {
+        SessionContext session = sessionContextResolver.resolve(request);
+        if (!session.isResolved()) {
+            return sessionErrorResponse(session);
+        }
+
+        return ResponseEntity.ok(batchProxyService.execute(batch.getRequests(), session.jti(), session.accessToken()));
+    }
+
     /**
      * Proxies public requests (registration, confirmation, api-docs) without authentication.
      * <p>
@@ -286,12 +369,13 @@ public class BffController {
      * <p>
      * This follows the unified public endpoint pattern where all public paths are
      * accessed via /{service}/public/** at the gateway level.
+     * <p>
+     * Like {@link #proxyRequest}, bodies are streamed through {@link GatewayProxyService}.
      */
     @RequestMapping(value = "/public/{service}/**", method = {RequestMethod.GET, RequestMethod.POST})
     public ResponseEntity<?> proxyPublicRequest(
             HttpServletRequest request,
-            @PathVariable String service,
-            @RequestBody(required = false) byte[] body) {
+            @PathVariable String service) {
 
         // Extract the path after "/bff/public/{service}"
         String requestUri = request.getRequestURI();
@@ -304,26 +388,48 @@ public class BffController {
         String queryString = request.getQueryString();
         URI targetUri = URI.create(gatewayUrl + targetPath + (queryString != null ? "?" + queryString : ""));
 
-        WebClient wc = webClientBuilder.build();
+        return downstreamBulkheads.execute(service,
+                () -> gatewayProxyService.forward(request, targetUri, null));
+    }
 
-        try {
-            return wc.method(HttpMethod.valueOf(request.getMethod()))
-                    .uri(targetUri)
-                    .headers(h -> {
-                        if (request.getContentType() != null) {
-                            h.setContentType(MediaType.parseMediaType(request.getContentType()));
-                        }
-                    })
-                    .bodyValue(body != null ? body : new byte[0])
-                    .retrieve()
-                    .toEntity(byte[].class)
-                    .block();
-        } catch (WebClientResponseException e) {
-            return ResponseEntity.status(e.getStatusCode())
-                    .body(e.getResponseBodyAsByteArray());
+    /**
+     * 503 for calls shed by the adaptive concurrency limit, telling clients when to come back.
+     */
+    @ExceptionHandler(AdaptiveConcurrencyLimiter.LimitExceededException.class)
+    public ResponseEntity<ProblemDetail> limitExceeded(AdaptiveConcurrencyLimiter.LimitExceededException ex) {
+        ProblemDetail problemDetail = ProblemDetail.forStatusAndDetail(ex.getStatusCode(), ex.getReason());
+        problemDetail.setTitle(ex.getStatusCode().toString());
+        return ResponseEntity.status(ex.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfter().toSeconds()))
+                .body(problemDetail);
+    }
+
+    /**
+     * Revokes the sessions of a user an admin has just deleted through this BFF, so they stop working
+     * at once instead of when their tokens fail to refresh. Deletions made elsewhere arrive through
+     * {@link com.example.bff.service.UserDeletionListener}.
+     */
+    private void revokeDeletedUserSessions(HttpServletRequest request, String path, ResponseEntity<?> response) {
+        if (!HttpMethod.DELETE.matches(request.getMethod()) || !response.getStatusCode().is2xxSuccessful()) {
+            return;
+        }
+        Matcher adminUser = ADMIN_USER_PATH.matcher(path);
+        if (adminUser.matches()) {
+            sessionService.revokeAll(adminUser.group(1));
         }
     }
 
+    /**
+     * 401 response for a session that could not be resolved.
+     */
+    private ResponseEntity<?> sessionErrorResponse(SessionContext session) {
+        return switch (session.status()) {
+            case MISSING_SESSION -> buildErrorResponse(401, "MISSING_SESSION", "BFF_SESSION cookie not found");
+            case INVALID_SESSION -> buildErrorResponse(401, "INVALID_SESSION", "Failed to extract JTI from session JWT");
+            default -> buildErrorResponse(401, "SESSION_NOT_FOUND", "Session not found in Redis (expired or invalid)");
+        };
+    }
+
     /**
      * Builds an error response with descriptive details in non-production environments.
      * In production, returns a generic 401 response to avoid leaking internal details.
@@ -0,0 +1,35 @@
+package com.example.bff.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Envelope for {@code POST /bff/batch}: several gateway calls issued with one BFF session lookup.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchRequest {
+
+    private List<SubRequest> requests;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SubRequest {
+        /** Client-chosen id echoed in the matching response. */
+        private String id;
+        /** GET, POST, PUT, PATCH or DELETE. */
+        private String method;
+        /** Gateway path as used after /bff/api, e.g. /profile or /orders?page=1. */
+        private String path;
+        /** Optional JSON body. */
+        private Object body;
+    }
+}
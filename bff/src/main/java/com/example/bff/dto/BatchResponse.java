@@ -0,0 +1,41 @@
+package com.example.bff.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result envelope of {@code POST /bff/batch}. Responses are in request order and each carries its
+ * own status, so one failed sub-request does not fail the batch.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchResponse {
+
+    private List<SubResponse> responses;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class SubResponse {
+        private String id;
+        private int status;
+        private Map<String, String> headers;
+        /** JSON response body, embedded as-is without re-parsing. */
+        @JsonRawValue
+        private String body;
+        /** Non-JSON response body. */
+        private String text;
+        private long durationMs;
+    }
+}
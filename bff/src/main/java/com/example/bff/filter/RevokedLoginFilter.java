@@ -0,0 +1,55 @@
+package com.example.bff.filter;
+
+import com.example.bff.service.SessionRevocationList;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.jspecify.annotations.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Ends the Spring Security login (JSESSIONID) of users whose sessions were all revoked.
+ * <p>
+ * Revoking a user ("log out everywhere", user deleted) rejects their BFF_SESSION cookies through
+ * {@link SessionRevocationList}. This filter applies the same revocation epoch to the OAuth2 login
+ * behind {@code /bff/user}, using the ID token's issue time as the login time. The HTTP session of a
+ * revoked login is invalidated and the request goes on unauthenticated, so {@code /bff/user}
+ * answers as after a logout.
+ * <p>
+ * Added to the security chain by {@code SecurityConfig}, not declared as a bean: Spring Boot would
+ * also register a bean as a servlet filter, which runs before the security context is loaded and
+ * then makes the chain skip this filter.
+ */
+public class RevokedLoginFilter extends OncePerRequestFilter {
+
+    private final SessionRevocationList revocationList;
+
+    public RevokedLoginFilter(SessionRevocationList revocationList) {
+        this.revocationList = revocationList;
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull FilterChain filterChain)
+            throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication instanceof OAuth2AuthenticationToken login
+                && login.getPrincipal() instanceof OidcUser user
+                && revocationList.isSubjectRevoked(login.getName(),
+                        user.getIssuedAt() != null ? user.getIssuedAt().toEpochMilli() : null)) {
+            SecurityContextHolder.clearContext();
+            HttpSession session = request.getSession(false);
+            if (session != null) {
+                session.invalidate();
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+}
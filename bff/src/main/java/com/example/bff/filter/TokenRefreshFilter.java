@@ -1,28 +1,23 @@
 package com.example.bff.filter;
 
-import com.example.bff.service.SessionRedisService;
-import com.example.bff.util.JwtUtils;
+import com.example.bff.service.SessionContext;
+import com.example.bff.service.SessionContextResolver;
+import com.example.bff.service.SlidingSessionService;
+import com.example.bff.service.TokenRefreshService;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
-import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NonNull;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
 import org.springframework.security.oauth2.core.OAuth2AccessToken;
-import org.springframework.security.oauth2.core.OAuth2RefreshToken;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
-import org.springframework.web.reactive.function.BodyInserters;
-import org.springframework.web.reactive.function.client.WebClient;
 
 import java.io.IOException;
 import java.time.Instant;
-import java.util.Arrays;
-import java.util.Map;
 
 /**
  * <p><strong>Proactive Token Refresh Filter</strong></p>
@@ -43,24 +38,32 @@ import java.util.Map;
  * 2. <strong>Stability:</strong> Spring Security's internal {@code TokenResponseClient} implementations
  *    change frequently between versions. A manual {@code WebClient} implementation ensures
  *    stability and full control over the refresh logic.</p>
+ *
+ * <p>The session is resolved through {@link SessionContextResolver}; the resulting
+ * {@link SessionContext} (with refreshed tokens, if any) is reused by the proxy controller.
+ * The refresh itself is delegated to {@link TokenRefreshService}, which coalesces concurrent
+ * refreshes of the same session within the node and across BFF instances.</p>
+ *
+ * <p>Resolved sessions are also handed to {@link SlidingSessionService}, which extends sessions
+ * that are past their touch threshold and reissues the BFF_SESSION cookie - also right after a
+ * refresh when the cookie is an encrypted one carrying the previous access token.</p>
  */
 @Component
 @Slf4j
 public class TokenRefreshFilter extends OncePerRequestFilter {
 
     private final long refreshBufferSeconds;
-    private final SessionRedisService sessionService;
-    private final JwtUtils jwtUtils;
-    private final WebClient webClient;
+    private final SessionContextResolver sessionContextResolver;
+    private final TokenRefreshService tokenRefreshService;
+    private final SlidingSessionService slidingSessionService;
 
-    public TokenRefreshFilter(SessionRedisService sessionService,
-                              JwtUtils jwtUtils,
-                              WebClient.Builder webClientBuilder,
+    public TokenRefreshFilter(SessionContextResolver sessionContextResolver,
+                              TokenRefreshService tokenRefreshService,
+                              SlidingSessionService slidingSessionService,
                               @org.springframework.beans.factory.annotation.Value("${bff.token.refresh-buffer-seconds}") long refreshBufferSeconds) {
-        this.sessionService = sessionService;
-        this.jwtUtils = jwtUtils;
-        // Using Builder allows us to inject a mock/custom builder in tests
-        this.webClient = webClientBuilder.build();
+        this.sessionContextResolver = sessionContextResolver;
+        this.tokenRefreshService = tokenRefreshService;
+        this.slidingSessionService = slidingSessionService;
         this.refreshBufferSeconds = refreshBufferSeconds;
     }
 
@@ -69,100 +72,53 @@ public class TokenRefreshFilter extends OncePerRequestFilter {
             throws ServletException, IOException {
 
         // Only apply to API requests where we act as a proxy
-        if (!request.getRequestURI().startsWith("/api/")) {
-            filterChain.doFilter(request, response);
-            return;
-        }
-
-        // 1. Extract Custom BFF_SESSION Cookie
-        Cookie[] cookies = request.getCookies();
-        if (cookies == null) {
-            filterChain.doFilter(request, response);
-            return;
-        }
-
-        String sessionJwt = Arrays.stream(cookies)
-                .filter(c -> "BFF_SESSION".equals(c.getName()))
-                .map(Cookie::getValue)
-                .findFirst()
-                .orElse(null);
-
-        if (sessionJwt == null) {
-            filterChain.doFilter(request, response);
-            return;
-        }
-
-        // 2. Validate Session JWT and Extract JTI (Redis Key)
-        String jti = jwtUtils.extractJti(sessionJwt);
-        if (jti == null) {
+        String uri = request.getRequestURI();
+        if (!uri.startsWith("/bff/api/") && !uri.startsWith("/api/") && !uri.equals("/bff/batch")) {
             filterChain.doFilter(request, response);
             return;
         }
 
-        // 3. Load OAuth2 Context from Redis
-        OAuth2AuthorizedClient client = sessionService.load(jti);
-        if (client == null || client.getRefreshToken() == null) {
-            filterChain.doFilter(request, response);
+        // 1. Resolve BFF_SESSION cookie, session JWT and Redis session (once per request)
+        SessionContext context = sessionContextResolver.resolve(request);
+        if (!context.isResolved() || !context.isRefreshable()) {
+            touchAndContinue(context, request, response, filterChain);
             return;
         }
 
-        // 4. Check for Proactive Refresh Condition
-        OAuth2AccessToken accessToken = client.getAccessToken();
+        // 2. Check for Proactive Refresh Condition
+        OAuth2AccessToken accessToken = context.client().getAccessToken();
         if (accessToken.getExpiresAt() != null) {
             long secondsRemaining = accessToken.getExpiresAt().getEpochSecond() - Instant.now().getEpochSecond();
             
             if (secondsRemaining < refreshBufferSeconds) {
+                Timer.Sample sample = Timer.start();
                 try {
-                    // 5. Execute Manual Refresh via Keycloak
-                    refreshTokens(client, jti);
+                    // 3. Execute Manual Refresh via Keycloak (single-flight per session)
+                    OAuth2AuthorizedClient refreshed = tokenRefreshService.refresh(context.jti());
+                    if (refreshed != null) {
+                        context = context.withClient(refreshed);
+                        sessionContextResolver.update(request, context);
+                    }
                 } catch (Exception e) {
                     log.error("Proactive Token Refresh failed: {}", e.getMessage());
                     // We continue the chain; the downstream service will likely return 401 if it's truly expired.
+                } finally {
+                    sample.stop(sessionContextResolver.refreshTimer());
                 }
             }
         }
 
-        filterChain.doFilter(request, response);
+        touchAndContinue(context, request, response, filterChain);
     }
 
-    private void refreshTokens(OAuth2AuthorizedClient client, String jti) {
-        Map tokenResponse = webClient.post()
-                .uri(client.getClientRegistration().getProviderDetails().getTokenUri())
-                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_FORM_URLENCODED_VALUE)
-                .body(BodyInserters.fromFormData("grant_type", "refresh_token")
-                        .with("refresh_token", client.getRefreshToken().getTokenValue())
-                        .with("client_id", client.getClientRegistration().getClientId())
-                        .with("client_secret", client.getClientRegistration().getClientSecret()))
-                .retrieve()
-                .bodyToMono(Map.class)
-                .block();
-
-        if (tokenResponse != null) {
-            String newAccessTokenValue = (String) tokenResponse.get("access_token");
-            String newRefreshTokenValue = (String) tokenResponse.get("refresh_token");
-            Integer expiresIn = (Integer) tokenResponse.get("expires_in");
-            
-            Instant newExpiresAt = Instant.now().plusSeconds(expiresIn);
-            
-            OAuth2AccessToken newAccessToken = new OAuth2AccessToken(
-                    OAuth2AccessToken.TokenType.BEARER,
-                    newAccessTokenValue,
-                    Instant.now(),
-                    newExpiresAt,
-                    client.getAccessToken().getScopes());
-            
-            OAuth2RefreshToken newRefreshToken = newRefreshTokenValue != null 
-                    ? new OAuth2RefreshToken(newRefreshTokenValue, Instant.now()) 
-                    : client.getRefreshToken();
-
-            OAuth2AuthorizedClient updatedClient = new OAuth2AuthorizedClient(
-                    client.getClientRegistration(),
-                    client.getPrincipalName(),
-                    newAccessToken,
-                    newRefreshToken);
-
-            // 6. Save Updated Tokens to Redis
-            sessionService.save(jti, updatedClient);
+    /**
+     * Slides the session and reissues the cookie if needed (after a refresh, for encrypted cookies), then continues.
+     */
+    private void touchAndContinue(SessionContext context, HttpServletRequest request, HttpServletResponse response,
+                                  FilterChain filterChain) throws ServletException, IOException {
+        if (context.isResolved()) {
+            slidingSessionService.touch(context, response);
         }
+        filterChain.doFilter(request, response);
     }
 }
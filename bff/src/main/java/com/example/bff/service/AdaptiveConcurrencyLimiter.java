@@ -0,0 +1,224 @@
+package com.example.bff.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive limit on concurrent proxied calls to the gateway (gradient algorithm).
+ * <p>
+ * The limit is not configured but learned from response times: a long-term average RTT stands for
+ * the gateway's healthy latency, and every {@code bff.proxy.limit.window-ms} the average RTT of the
+ * last window is compared against it. While the gateway keeps up the limit grows by a small queue
+ * allowance ({@code sqrt(limit)}); once latency rises above {@code bff.proxy.limit.rtt-tolerance}
+ * times the long-term RTT the limit shrinks proportionally, down to half per window. The long-term
+ * RTT slowly follows a lasting change in latency, so a new normal is accepted after a while.
+ * Completed calls only add to striped counters; the limit is recomputed once per window by whichever
+ * call first finds the window over, while the others carry on without waiting.
+ * <p>
+ * Calls above the limit are not queued: they fail at once with 503 and a {@code Retry-After} of
+ * {@code bff.proxy.limit.retry-after-seconds}, so a slow gateway sheds load instead of piling up
+ * BFF requests that would all time out together. Only actual gateway calls are counted
+ * ({@link GatewayProxyService}): cache hits, coalesced followers and event streams neither take a
+ * slot nor feed the RTT, which is measured up to the upstream status line and headers.
+ * <p>
+ * Metrics:
+ * <ul>
+ *   <li>{@code bff.proxy.limit} - current concurrency limit</li>
+ *   <li>{@code bff.proxy.limit.inflight} - calls currently counted against the limit</li>
+ *   <li>{@code bff.proxy.limit.rtt{window=short|long}} - last window and long-term average RTT</li>
+ *   <li>{@code bff.proxy.limit.calls{outcome=permitted|rejected}}</li>
+ * </ul>
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * Windows averaged into the long-term RTT.
+     */
+    private static final int LONG_WINDOW = 600;
+    private static final int MIN_WINDOW_SAMPLES = 10;
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final double smoothing;
+    private final long windowNanos;
+    private final Duration retryAfter;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final Counter permitted;
+    private final Counter rejected;
+
+    private final LongAdder windowRttSum = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final LongAccumulator windowMaxInflight = new LongAccumulator(Math::max, 0);
+    private final ReentrantLock windowLock = new ReentrantLock();
+
+    private volatile double limit;
+    private volatile double shortRttNanos;
+    private volatile double longRttNanos;
+    private volatile long windowEndNanos;
+    // Guarded by windowLock
+    private long longRttWindows;
+
+    public AdaptiveConcurrencyLimiter(MeterRegistry meterRegistry,
+                                      @Value("${bff.proxy.limit.enabled:true}") boolean enabled,
+                                      @Value("${bff.proxy.limit.initial-limit:100}") int initialLimit,
+                                      @Value("${bff.proxy.limit.min-limit:20}") int minLimit,
+                                      @Value("${bff.proxy.limit.max-limit:800}") int maxLimit,
+                                      @Value("${bff.proxy.limit.rtt-tolerance:1.5}") double rttTolerance,
+                                      @Value("${bff.proxy.limit.smoothing:0.2}") double smoothing,
+                                      @Value("${bff.proxy.limit.window-ms:1000}") long windowMs,
+                                      @Value("${bff.proxy.limit.retry-after-seconds:1}") long retryAfterSeconds) {
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.smoothing = smoothing;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.retryAfter = Duration.ofSeconds(retryAfterSeconds);
+        this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+        this.windowEndNanos = System.nanoTime() + windowNanos;
+
+        Gauge.builder("bff.proxy.limit", this, l -> l.limit)
+                .description("Adaptive concurrency limit on proxied gateway calls")
+                .register(meterRegistry);
+        Gauge.builder("bff.proxy.limit.inflight", inflight, AtomicInteger::get)
+                .description("Proxied gateway calls counted against the adaptive limit")
+                .register(meterRegistry);
+        Gauge.builder("bff.proxy.limit.rtt", this, l -> l.shortRttNanos / 1e9)
+                .description("Average gateway RTT seen by the adaptive limiter")
+                .tag("window", "short")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("bff.proxy.limit.rtt", this, l -> l.longRttNanos / 1e9)
+                .description("Average gateway RTT seen by the adaptive limiter")
+                .tag("window", "long")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.permitted = calls(meterRegistry, "permitted");
+        this.rejected = calls(meterRegistry, "rejected");
+    }
+
+    /**
+     * Runs {@code call} if it fits into the current limit and feeds its duration back into the limit.
+     *
+     * @throws LimitExceededException 503 with {@code Retry-After} if the limit is reached
+     */
+    public <T> T execute(Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        int current = acquire();
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            inflight.decrementAndGet();
+            onSample(System.nanoTime() - start, current);
+        }
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    private int acquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                throw new LimitExceededException(retryAfter);
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                permitted.increment();
+                return current + 1;
+            }
+        }
+    }
+
+    private void onSample(long rttNanos, int inflightAtStart) {
+        windowRttSum.add(rttNanos);
+        windowSamples.increment();
+        windowMaxInflight.accumulate(inflightAtStart);
+        if (System.nanoTime() - windowEndNanos < 0 || windowSamples.sum() < MIN_WINDOW_SAMPLES
+                || !windowLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            // Another call may have closed this window while we were acquiring the lock
+            if (now - windowEndNanos >= 0 && windowSamples.sum() >= MIN_WINDOW_SAMPLES) {
+                windowEndNanos = now + windowNanos;
+                closeWindow();
+            }
+        } finally {
+            windowLock.unlock();
+        }
+    }
+
+    /**
+     * Recomputes the limit from the window's samples. Samples completing during the reset may be
+     * counted in either window.
+     */
+    private void closeWindow() {
+        long samples = windowSamples.sumThenReset();
+        double shortRtt = (double) windowRttSum.sumThenReset() / samples;
+        long maxInflight = windowMaxInflight.getThenReset();
+
+        shortRttNanos = shortRtt;
+        longRttWindows = Math.min(longRttWindows + 1, LONG_WINDOW);
+        double longRtt = longRttNanos + (shortRtt - longRttNanos) / longRttWindows;
+        if (longRtt / shortRtt > 2) {
+            // Latency dropped for good (e.g. the gateway scaled out); let the baseline follow faster
+            longRtt *= 0.95;
+        }
+        longRttNanos = longRtt;
+
+        // Too little traffic to tell whether the limit is right
+        if (maxInflight < limit / 2) {
+            return;
+        }
+
+        double gradient = Math.clamp(rttTolerance * longRtt / shortRtt, 0.5, 1.0);
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.clamp(limit * (1 - smoothing) + newLimit * smoothing, minLimit, maxLimit);
+    }
+
+    private static Counter calls(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("bff.proxy.limit.calls")
+                .description("Proxied gateway calls by adaptive limit outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * A call shed by the adaptive limit; answered with 503 and {@code Retry-After}.
+     */
+    public static class LimitExceededException extends ResponseStatusException {
+
+        private final Duration retryAfter;
+
+        LimitExceededException(Duration retryAfter) {
+            super(HttpStatus.SERVICE_UNAVAILABLE, "Gateway is overloaded, retry later");
+            this.retryAfter = retryAfter;
+        }
+
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+    }
+}
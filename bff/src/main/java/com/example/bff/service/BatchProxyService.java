@@ -0,0 +1,216 @@
+package com.example.bff.service;
+
+import com.example.bff.dto.BatchRequest.SubRequest;
+import com.example.bff.dto.BatchResponse;
+import com.example.bff.dto.BatchResponse.SubResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fans the sub-requests of a {@code POST /bff/batch} out to the gateway.
+ * <p>
+ * The caller resolves the BFF session once; all sub-requests reuse its access token. Sub-requests
+ * run in parallel, at most {@code bff.batch.concurrency} at a time, and their responses are returned
+ * in request order. Each one goes through its downstream's bulkhead and the adaptive concurrency
+ * limit like a single proxied request, so a batch cannot take more of a downstream than the same
+ * calls made one by one. Every sub-request gets its own status: invalid sub-requests are answered
+ * with 400, sub-requests shed by a bulkhead or the limit with 503 and gateway failures with 502,
+ * without failing the rest of the batch.
+ * <p>
+ * Latency is recorded per sub-request in {@code bff.batch.subrequest{downstream,outcome}} and
+ * echoed as {@code durationMs} in the envelope.
+ */
+@Service
+@Slf4j
+public class BatchProxyService {
+
+    private static final Set<String> METHODS = Set.of("GET", "POST", "PUT", "PATCH", "DELETE");
+    private static final String API_PREFIX = "/bff/api";
+
+    private final GatewayProxyService gatewayProxyService;
+    private final CachingProxyService cachingProxyService;
+    private final DownstreamBulkheads downstreamBulkheads;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> latencies = new ConcurrentHashMap<>();
+    private final URI gatewayUri;
+    private final int maxRequests;
+    private final int concurrency;
+
+    public BatchProxyService(GatewayProxyService gatewayProxyService,
+                             CachingProxyService cachingProxyService,
+                             DownstreamBulkheads downstreamBulkheads,
+                             MeterRegistry meterRegistry,
+                             @Value("${bff.gateway.url}") String gatewayUrl,
+                             @Value("${bff.batch.max-requests:20}") int maxRequests,
+                             @Value("${bff.batch.concurrency:6}") int concurrency) {
+        this.gatewayProxyService = gatewayProxyService;
+        this.cachingProxyService = cachingProxyService;
+        this.downstreamBulkheads = downstreamBulkheads;
+        this.meterRegistry = meterRegistry;
+        this.gatewayUri = URI.create(gatewayUrl);
+        this.maxRequests = maxRequests;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Executes the sub-requests with the session's access token.
+     *
+     * @throws ResponseStatusException 400 if the batch is empty or larger than {@code bff.batch.max-requests}
+     */
+    public BatchResponse execute(List<SubRequest> requests, String jti, String accessToken) {
+        if (requests == null || requests.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Batch contains no requests");
+        }
+        if (requests.size() > maxRequests) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Batch exceeds " + maxRequests + " requests");
+        }
+
+        // Writes through this session make its cached GET responses stale, before and after they run
+        boolean writes = requests.stream().anyMatch(sub -> sub.getMethod() != null && !"GET".equalsIgnoreCase(sub.getMethod()));
+        if (writes) {
+            cachingProxyService.invalidate(jti);
+        }
+        List<SubResponse> responses = Flux.fromIterable(requests)
+                .flatMapSequential(sub -> execute(sub, accessToken), concurrency)
+                .collectList()
+                .block();
+        if (writes) {
+            cachingProxyService.invalidate(jti);
+        }
+        return new BatchResponse(responses);
+    }
+
+    private Mono<SubResponse> execute(SubRequest sub, String accessToken) {
+        String method = sub.getMethod() != null ? sub.getMethod().toUpperCase() : "GET";
+        String path = sub.getPath() != null && sub.getPath().startsWith(API_PREFIX + "/")
+                ? sub.getPath().substring(API_PREFIX.length())
+                : sub.getPath();
+        if (!METHODS.contains(method)) {
+            return Mono.just(error(sub, HttpStatus.BAD_REQUEST, "Unsupported method", 0));
+        }
+        URI target = targetUri(path);
+        if (target == null) {
+            return Mono.just(error(sub, HttpStatus.BAD_REQUEST, "Invalid path", 0));
+        }
+
+        String downstream = downstreamBulkheads.downstreamTag(path);
+        long start = System.nanoTime();
+        // Bulkhead and limit block while waiting for a permit, so each sub-request runs off the caller's thread
+        return Mono.fromCallable(() -> downstreamBulkheads.execute(DownstreamBulkheads.downstreamOf(path),
+                        () -> gatewayProxyService.send(HttpMethod.valueOf(method), target, accessToken, sub.getBody())))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(response -> {
+                    long nanos = System.nanoTime() - start;
+                    record(downstream, outcome(response.getStatusCode().value()), nanos);
+                    return toSubResponse(sub, response, nanos);
+                })
+                .onErrorResume(e -> {
+                    long nanos = System.nanoTime() - start;
+                    if (e instanceof ResponseStatusException shed
+                            && shed.getStatusCode().value() == HttpStatus.SERVICE_UNAVAILABLE.value()) {
+                        record(downstream, "rejected", nanos);
+                        return Mono.just(error(sub, HttpStatus.SERVICE_UNAVAILABLE, "Downstream busy", nanos));
+                    }
+                    log.debug("Batch sub-request to {} failed: {}", path, e.getMessage());
+                    record(downstream, "error", nanos);
+                    return Mono.just(error(sub, HttpStatus.BAD_GATEWAY, "Gateway call failed", nanos));
+                });
+    }
+
+    /**
+     * Resolves a sub-request path against the gateway. Returns {@code null} if it would leave the gateway.
+     */
+    private URI targetUri(String path) {
+        if (path == null || !path.startsWith("/") || path.startsWith("//") || path.contains("\\")) {
+            return null;
+        }
+        try {
+            URI target = URI.create(gatewayUri + path);
+            boolean sameOrigin = gatewayUri.getHost().equalsIgnoreCase(target.getHost())
+                    && gatewayUri.getPort() == target.getPort();
+            return sameOrigin ? target : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static SubResponse toSubResponse(SubRequest sub, ResponseEntity<byte[]> response, long nanos) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        GatewayProxyService.responseHeaders(response.getHeaders()).forEach((name, values) -> {
+            if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                headers.put(name, String.join(", ", values));
+            }
+        });
+
+        SubResponse.SubResponseBuilder result = SubResponse.builder()
+                .id(sub.getId())
+                .status(response.getStatusCode().value())
+                .headers(headers)
+                .durationMs(TimeUnit.NANOSECONDS.toMillis(nanos));
+
+        byte[] body = response.getBody();
+        if (body != null && body.length > 0) {
+            String content = new String(body, StandardCharsets.UTF_8);
+            MediaType contentType = response.getHeaders().getContentType();
+            boolean json = contentType != null
+                    && (MediaType.APPLICATION_JSON.isCompatibleWith(contentType)
+                    || contentType.getSubtype().endsWith("+json"));
+            if (json) {
+                result.body(content);
+            } else {
+                result.text(content);
+            }
+        }
+        return result.build();
+    }
+
+    private static SubResponse error(SubRequest sub, HttpStatus status, String message, long nanos) {
+        return SubResponse.builder()
+                .id(sub.getId())
+                .status(status.value())
+                .text(message)
+                .durationMs(TimeUnit.NANOSECONDS.toMillis(nanos))
+                .build();
+    }
+
+    private static String outcome(int status) {
+        if (status >= 500) {
+            return "server_error";
+        }
+        return status >= 400 ? "client_error" : "success";
+    }
+
+    /**
+     * Built once per downstream and outcome; both are bounded sets of tags.
+     */
+    private void record(String downstream, String outcome, long nanos) {
+        latencies.computeIfAbsent(downstream + ":" + outcome, key -> Timer.builder("bff.batch.subrequest")
+                        .description("Latency of batch sub-requests to the gateway")
+                        .tag("downstream", downstream)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
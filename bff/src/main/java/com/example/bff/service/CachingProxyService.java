@@ -0,0 +1,259 @@
+package com.example.bff.service;
+
+import com.example.bff.service.ProxyResponseCache.CachedResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Serves proxied GETs through the per-session {@link ProxyResponseCache}.
+ * <ol>
+ *   <li>A fresh entry ({@code bff.proxy.cache.fresh-seconds}) is served without calling the gateway.</li>
+ *   <li>A stale entry with an upstream ETag is revalidated with {@code If-None-Match}; on 304 the
+ *       cached body is served and the entry is fresh again.</li>
+ *   <li>Otherwise the response is fetched and, if it is a 200 within {@code max-entry-bytes}, cached.</li>
+ * </ol>
+ * Conditional requests from the browser are answered by the BFF: if its {@code If-None-Match}
+ * matches the cached ETag, a 304 is returned without a body. Downstream responses without an ETag
+ * get one computed from the body.
+ * <p>
+ * Bodies are cached as received, possibly compressed; a client that does not accept the cached
+ * {@code Content-Encoding} bypasses the entry.
+ * <p>
+ * When the gateway fails, responses of routes with a stale window are answered from the session's
+ * last known good copy instead ({@link StaleResponseStore}).
+ * <p>
+ * Freshness is the BFF's own policy and does not follow the downstream {@code Cache-Control},
+ * because the services send Spring Security's blanket {@code no-store} default; that header is
+ * still passed on to the browser unchanged.
+ */
+@Service
+@RequiredArgsConstructor
+public class CachingProxyService {
+
+    private final GatewayProxyService gatewayProxyService;
+    private final ProxyResponseCache cache;
+    private final StaleResponseStore staleStore;
+
+    public boolean isCacheable(HttpServletRequest request, String path) {
+        return "GET".equals(request.getMethod())
+                && request.getHeader(HttpHeaders.RANGE) == null
+                && cache.isCacheable(path);
+    }
+
+    public ResponseEntity<?> get(HttpServletRequest request, URI targetUri, String jti, String accessToken) {
+        String uri = targetUri.toString();
+        Instant now = Instant.now();
+        CachedResponse cached = cache.get(jti, uri);
+
+        if (cached != null && cached.isTooLarge() && cached.isFresh(now)) {
+            cache.record("bypass");
+            return gatewayProxyService.stream(request, targetUri, accessToken);
+        }
+        if (cached != null && !cached.isTooLarge() && !acceptsEncoding(request, cached.headers())) {
+            // Cached compressed for another client; the upstream negotiates this one's encoding
+            cache.record("bypass");
+            return gatewayProxyService.stream(request, targetUri, accessToken);
+        }
+        if (cached != null && !cached.isTooLarge() && cached.isFresh(now)) {
+            cache.record("fresh");
+            cache.recordBytesSaved("downstream", cached.body().length);
+            return respond(request, cached);
+        }
+
+        String revalidateWith = cached != null ? cached.upstreamEtag() : null;
+        ResponseEntity<Flux<DataBuffer>> upstream;
+        try {
+            upstream = gatewayProxyService.open(request, targetUri, accessToken, h -> {
+                // The browser's conditional headers are answered here, against the cached entry
+                h.remove(HttpHeaders.IF_NONE_MATCH);
+                h.remove(HttpHeaders.IF_MODIFIED_SINCE);
+                if (revalidateWith != null) {
+                    h.setIfNoneMatch(revalidateWith);
+                }
+            }, staleStore.deadline(jti, targetUri));
+        } catch (RuntimeException e) {
+            return staleOr(request, targetUri, jti, e);
+        }
+        if (upstream.getStatusCode().is5xxServerError()) {
+            ResponseEntity<?> stale = stale(request, targetUri, jti);
+            if (stale != null) {
+                discard(upstream.getBody());
+                return stale;
+            }
+        }
+
+        if (revalidateWith != null && upstream.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+            discard(upstream.getBody());
+            CachedResponse revalidated = cached.withFreshUntil(cache.freshUntil(now));
+            cache.put(jti, uri, revalidated);
+            staleStore.put(jti, targetUri, revalidated);
+            cache.record("revalidated");
+            cache.recordBytesSaved("downstream", revalidated.body().length);
+            return respond(request, revalidated);
+        }
+
+        cache.record("miss");
+        if (upstream.getStatusCode().value() != HttpStatus.OK.value()) {
+            return gatewayProxyService.streamingResponse(upstream);
+        }
+        if (upstream.getHeaders().getContentLength() > cache.maxEntryBytes()) {
+            cache.put(jti, uri, CachedResponse.tooLarge(cache.freshUntil(now)));
+            return gatewayProxyService.streamingResponse(upstream);
+        }
+
+        byte[] body;
+        try {
+            body = read(upstream.getBody(), cache.maxEntryBytes());
+        } catch (DataBufferLimitException e) {
+            // Chunked response larger than an entry: GET is safe, so fetch it again as a stream
+            cache.put(jti, uri, CachedResponse.tooLarge(cache.freshUntil(now)));
+            return gatewayProxyService.stream(request, targetUri, accessToken);
+        } catch (RuntimeException e) {
+            return staleOr(request, targetUri, jti, e);
+        }
+
+        HttpHeaders headers = GatewayProxyService.responseHeaders(upstream.getHeaders());
+        String upstreamEtag = headers.getETag();
+        String etag = upstreamEtag != null ? upstreamEtag : computeEtag(body);
+        headers.setETag(etag);
+        headers.setContentLength(body.length);
+
+        CachedResponse fetched = new CachedResponse(HttpHeaders.readOnlyHttpHeaders(headers), body,
+                upstreamEtag, etag, cache.freshUntil(now));
+        cache.put(jti, uri, fetched);
+        staleStore.put(jti, targetUri, fetched);
+        return respond(request, fetched);
+    }
+
+    /**
+     * Answers a failed or shed GET from the session's last known good copy, or rethrows the failure.
+     */
+    public ResponseEntity<?> staleOr(HttpServletRequest request, URI targetUri, String jti, RuntimeException failure) {
+        ResponseEntity<?> stale = stale(request, targetUri, jti);
+        if (stale == null) {
+            throw failure;
+        }
+        return stale;
+    }
+
+    private ResponseEntity<?> stale(HttpServletRequest request, URI targetUri, String jti) {
+        if (!staleStore.isEnabled()) {
+            return null;
+        }
+        StaleResponseStore.StaleCopy copy = staleStore.get(jti, targetUri);
+        if (copy == null || !acceptsEncoding(request, copy.response().headers())) {
+            staleStore.record(false);
+            return null;
+        }
+        staleStore.record(true);
+        long age = Duration.between(copy.storedAt(), Instant.now()).toSeconds();
+        HttpHeaders headers = new HttpHeaders();
+        headers.addAll(copy.response().headers());
+        headers.set("Warning", "110 - \"Response is Stale\"");
+        headers.set(HttpHeaders.AGE, String.valueOf(age));
+        headers.set(StaleResponseStore.STALE_HEADER, "true");
+        return ResponseEntity.ok().headers(headers).body(copy.response().body());
+    }
+
+    /**
+     * Drops the session's cached responses after a request that may have changed data.
+     */
+    public void invalidate(String jti) {
+        cache.invalidateSession(jti);
+    }
+
+    private ResponseEntity<?> respond(HttpServletRequest request, CachedResponse response) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && matches(ifNoneMatch, response.etag())) {
+            cache.recordBytesSaved("client", response.body().length);
+            HttpHeaders headers = new HttpHeaders();
+            headers.setETag(response.etag());
+            String cacheControl = response.headers().getCacheControl();
+            if (cacheControl != null) {
+                headers.setCacheControl(cacheControl);
+            }
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+        return ResponseEntity.ok().headers(response.headers()).body(response.body());
+    }
+
+    /**
+     * Whether the client accepts the {@code Content-Encoding} of a cached body. Entries are stored as
+     * received from upstream, compressed if the client that fetched them allowed it.
+     */
+    private static boolean acceptsEncoding(HttpServletRequest request, HttpHeaders cachedHeaders) {
+        String encoding = cachedHeaders.getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (encoding == null || encoding.equalsIgnoreCase("identity")) {
+            return true;
+        }
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String candidate : acceptEncoding.split(",")) {
+            String[] parts = candidate.trim().split(";");
+            String coding = parts[0].trim();
+            boolean refused = parts.length > 1 && parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            if (!refused && (coding.equalsIgnoreCase(encoding) || coding.equals("*"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        String strong = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals(strong) || tag.equals("W/" + strong)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] read(Flux<DataBuffer> body, int maxBytes) {
+        DataBuffer joined = DataBufferUtils.join(body, maxBytes).block();
+        if (joined == null) {
+            return new byte[0];
+        }
+        try {
+            byte[] bytes = new byte[joined.readableByteCount()];
+            joined.read(bytes);
+            return bytes;
+        } finally {
+            DataBufferUtils.release(joined);
+        }
+    }
+
+    private static void discard(Flux<DataBuffer> body) {
+        body.map(DataBufferUtils::release).blockLast();
+    }
+
+    /**
+     * Strong ETag for a body the upstream sent without one.
+     */
+    static String computeEtag(byte[] body) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(hash).substring(0, 22) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
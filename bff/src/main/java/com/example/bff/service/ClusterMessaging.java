@@ -0,0 +1,23 @@
+package com.example.bff.service;
+
+import org.springframework.data.redis.connection.MessageListener;
+
+/**
+ * Publish/subscribe between BFF instances: cache invalidations, revocations and user deletions.
+ * <p>
+ * Implementations, selected with {@code bff.session.store}:
+ * <ul>
+ *   <li>{@code redis}, {@code hybrid} - {@link RedisClusterMessaging}, Redis pub/sub</li>
+ *   <li>{@code local} - {@link LocalClusterMessaging}, a single node with nobody else to tell</li>
+ * </ul>
+ * Messages are plain strings; listeners receive them as Redis {@link org.springframework.data.redis.connection.Message}s.
+ */
+public interface ClusterMessaging {
+
+    /**
+     * Sends the message to every instance subscribed to the channel, possibly including this one.
+     */
+    void publish(String channel, String message);
+
+    void subscribe(MessageListener listener, String channel);
+}
@@ -0,0 +1,151 @@
+package com.example.bff.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Per-downstream concurrency limits for proxied calls.
+ * <p>
+ * With virtual threads, the Tomcat pool no longer caps how many gateway calls are in flight, so a
+ * slow downstream could otherwise absorb every connection in the shared pool. Each downstream
+ * (the first path segment of the gateway route, e.g. {@code profile} or {@code orders}) gets its
+ * own semaphore; a call waits up to {@code bff.proxy.bulkhead.max-wait-ms} for a permit and is
+ * rejected with 503 afterwards. Routes not listed in {@code bff.proxy.bulkhead.downstreams} share
+ * the {@value #OTHER} bulkhead.
+ * <p>
+ * Limits default to {@code bff.proxy.bulkhead.max-concurrent-calls} and can be overridden per
+ * downstream with {@code bff.proxy.bulkhead.<downstream>.max-concurrent-calls}.
+ * <p>
+ * Metrics (tagged by {@code downstream}):
+ * <ul>
+ *   <li>{@code bff.proxy.bulkhead.active} - calls currently holding a permit</li>
+ *   <li>{@code bff.proxy.bulkhead.wait} - time spent queueing for a permit</li>
+ *   <li>{@code bff.proxy.bulkhead.calls{outcome=permitted|rejected}}</li>
+ * </ul>
+ */
+@Component
+public class DownstreamBulkheads {
+
+    static final String OTHER = "other";
+
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final Duration maxWait;
+
+    public DownstreamBulkheads(Environment env,
+                               MeterRegistry meterRegistry,
+                               @Value("${bff.proxy.bulkhead.enabled:true}") boolean enabled,
+                               @Value("${bff.proxy.bulkhead.downstreams:profile,orders,admin}") List<String> downstreams,
+                               @Value("${bff.proxy.bulkhead.max-concurrent-calls:200}") int defaultMaxConcurrentCalls,
+                               @Value("${bff.proxy.bulkhead.max-wait-ms:100}") long maxWaitMs) {
+        this.enabled = enabled;
+        this.maxWait = Duration.ofMillis(maxWaitMs);
+        for (String downstream : downstreams) {
+            int limit = env.getProperty("bff.proxy.bulkhead." + downstream + ".max-concurrent-calls",
+                    Integer.class, defaultMaxConcurrentCalls);
+            bulkheads.put(downstream, new Bulkhead(downstream, limit, meterRegistry));
+        }
+        bulkheads.put(OTHER, new Bulkhead(OTHER, defaultMaxConcurrentCalls, meterRegistry));
+    }
+
+    /**
+     * Runs {@code call} while holding a permit of the downstream's bulkhead.
+     *
+     * @throws ResponseStatusException 503 if no permit became available within the max wait
+     */
+    public <T> T execute(String downstream, Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        Bulkhead bulkhead = bulkheads.getOrDefault(downstream, bulkheads.get(OTHER));
+        bulkhead.acquire(maxWait);
+        try {
+            return call.get();
+        } finally {
+            bulkhead.semaphore.release();
+        }
+    }
+
+    /**
+     * Downstream service of a gateway path: its first segment, e.g. /orders/42 -> orders.
+     */
+    public static String downstreamOf(String path) {
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = start;
+        while (end < path.length() && path.charAt(end) != '/' && path.charAt(end) != '?') {
+            end++;
+        }
+        return path.substring(start, end);
+    }
+
+    /**
+     * The configured downstream name for a gateway path, or {@value #OTHER}. Safe to use as a metric tag.
+     */
+    public String downstreamTag(String path) {
+        String downstream = downstreamOf(path);
+        return bulkheads.containsKey(downstream) ? downstream : OTHER;
+    }
+
+    private static final class Bulkhead {
+
+        private final Semaphore semaphore;
+        private final Timer wait;
+        private final Counter permitted;
+        private final Counter rejected;
+
+        Bulkhead(String downstream, int maxConcurrentCalls, MeterRegistry meterRegistry) {
+            this.semaphore = new Semaphore(maxConcurrentCalls, true);
+            Gauge.builder("bff.proxy.bulkhead.active", semaphore, s -> maxConcurrentCalls - s.availablePermits())
+                    .description("Proxied calls currently holding a bulkhead permit")
+                    .tag("downstream", downstream)
+                    .register(meterRegistry);
+            this.wait = Timer.builder("bff.proxy.bulkhead.wait")
+                    .description("Time proxied calls spent waiting for a bulkhead permit")
+                    .tag("downstream", downstream)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            this.permitted = calls(meterRegistry, downstream, "permitted");
+            this.rejected = calls(meterRegistry, downstream, "rejected");
+        }
+
+        void acquire(Duration maxWait) {
+            long start = System.nanoTime();
+            boolean acquired;
+            try {
+                acquired = semaphore.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            wait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (!acquired) {
+                rejected.increment();
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Downstream service is busy");
+            }
+            permitted.increment();
+        }
+
+        private static Counter calls(MeterRegistry meterRegistry, String downstream, String outcome) {
+            return Counter.builder("bff.proxy.bulkhead.calls")
+                    .description("Proxied calls by bulkhead outcome")
+                    .tag("downstream", downstream)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+    }
+}
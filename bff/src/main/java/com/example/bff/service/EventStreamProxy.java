@@ -0,0 +1,220 @@
+package com.example.bff.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Relays {@code text/event-stream} responses from the gateway to the browser.
+ * <p>
+ * Requests whose {@code Accept} header asks for an event stream (as {@code EventSource} does) are
+ * not cached, hedged or coalesced. The upstream response is relayed chunk by chunk and each chunk
+ * is flushed to the client as soon as it arrives. Responses of any other content type are streamed
+ * like every other proxied response.
+ * <ul>
+ *   <li>While the upstream is silent, an SSE comment is sent every
+ *       {@code bff.proxy.event-stream.heartbeat-seconds}, but only between events. This keeps
+ *       intermediaries from closing the connection and detects clients that went away.</li>
+ *   <li>When the client disconnects, the upstream subscription is cancelled, which closes the
+ *       gateway connection.</li>
+ *   <li>Streams end after {@code bff.proxy.event-stream.timeout-minutes}; {@code EventSource}
+ *       reconnects on its own.</li>
+ *   <li>At most {@code bff.proxy.event-stream.max-connections} streams are open per BFF instance.
+ *       Further requests get a 503.</li>
+ * </ul>
+ * <p>
+ * Metrics: {@code bff.proxy.event-streams.active} and
+ * {@code bff.proxy.event-streams.requests{outcome=opened|rejected}}.
+ */
+@Service
+@Slf4j
+public class EventStreamProxy {
+
+    private static final int PREFETCH = 4;
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final GatewayProxyService gatewayProxyService;
+    private final Semaphore connections;
+    private final Duration heartbeat;
+    private final Duration timeout;
+    private final Counter opened;
+    private final Counter rejected;
+
+    public EventStreamProxy(GatewayProxyService gatewayProxyService,
+                            MeterRegistry meterRegistry,
+                            @Value("${bff.proxy.event-stream.max-connections:1000}") int maxConnections,
+                            @Value("${bff.proxy.event-stream.heartbeat-seconds:15}") long heartbeatSeconds,
+                            @Value("${bff.proxy.event-stream.timeout-minutes:30}") long timeoutMinutes) {
+        this.gatewayProxyService = gatewayProxyService;
+        this.connections = new Semaphore(maxConnections);
+        this.heartbeat = Duration.ofSeconds(heartbeatSeconds);
+        this.timeout = Duration.ofMinutes(timeoutMinutes);
+        Gauge.builder("bff.proxy.event-streams.active", connections, s -> maxConnections - s.availablePermits())
+                .description("Event streams currently relayed from the gateway")
+                .register(meterRegistry);
+        this.opened = requests(meterRegistry, "opened");
+        this.rejected = requests(meterRegistry, "rejected");
+    }
+
+    public boolean accepts(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE);
+    }
+
+    /**
+     * Opens the upstream stream and returns the client response relaying it.
+     *
+     * @throws ResponseStatusException 503 if the instance already relays the maximum number of streams
+     */
+    public ResponseEntity<?> relay(HttpServletRequest request, URI targetUri, String accessToken) {
+        if (!connections.tryAcquire()) {
+            rejected.increment();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many open event streams");
+        }
+        ResponseEntity<Flux<DataBuffer>> upstream;
+        try {
+            upstream = gatewayProxyService.openStream(request, targetUri, accessToken, timeout);
+        } catch (RuntimeException e) {
+            connections.release();
+            throw e;
+        }
+        MediaType contentType = upstream.getHeaders().getContentType();
+        if (contentType == null || !MediaType.TEXT_EVENT_STREAM.isCompatibleWith(contentType)) {
+            connections.release();
+            return gatewayProxyService.streamingResponse(upstream);
+        }
+
+        opened.increment();
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeout.toMillis());
+        Relay relay = new Relay(emitter);
+        emitter.onCompletion(relay::close);
+        emitter.onTimeout(relay::close);
+        emitter.onError(e -> relay.close());
+        relay.start(upstream.getBody());
+
+        return ResponseEntity.status(upstream.getStatusCode())
+                .headers(GatewayProxyService.responseHeaders(upstream.getHeaders()))
+                .body(emitter);
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("bff.proxy.event-streams.requests")
+                .description("Event stream requests by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * One relayed stream. Chunks and heartbeats are written under the relay's lock, so a heartbeat
+     * never lands inside an event.
+     */
+    private final class Relay {
+
+        private final ResponseBodyEmitter emitter;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile Disposable subscription;
+        private volatile Disposable heartbeats;
+        private long lastWriteNanos = System.nanoTime();
+        private int trailingNewlines = 2;
+
+        Relay(ResponseBodyEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void start(Flux<DataBuffer> body) {
+            subscription = body
+                    .publishOn(Schedulers.boundedElastic(), PREFETCH)
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .subscribe(this::send, this::fail, this::complete);
+            long period = heartbeat.toMillis();
+            heartbeats = Schedulers.parallel().schedulePeriodically(this::heartbeat, period, period, TimeUnit.MILLISECONDS);
+            if (closed.get()) {
+                dispose();
+            }
+        }
+
+        private void send(DataBuffer chunk) {
+            byte[] bytes = new byte[chunk.readableByteCount()];
+            chunk.read(bytes);
+            DataBufferUtils.release(chunk);
+            synchronized (this) {
+                for (byte b : bytes) {
+                    trailingNewlines = b == '\n' ? trailingNewlines + 1 : b == '\r' ? trailingNewlines : 0;
+                }
+                write(bytes);
+            }
+        }
+
+        private synchronized void heartbeat() {
+            if (trailingNewlines >= 2 && System.nanoTime() - lastWriteNanos >= heartbeat.toNanos()) {
+                write(HEARTBEAT);
+            }
+        }
+
+        private void write(byte[] bytes) {
+            if (closed.get()) {
+                return;
+            }
+            try {
+                emitter.send(bytes, MediaType.TEXT_EVENT_STREAM);
+                lastWriteNanos = System.nanoTime();
+            } catch (IOException | IllegalStateException e) {
+                // Client gone; the container reports the error to the emitter as well
+                log.debug("Event stream client disconnected: {}", e.getMessage());
+                close();
+            }
+        }
+
+        private void fail(Throwable error) {
+            log.debug("Upstream event stream failed: {}", error.getMessage());
+            emitter.completeWithError(error);
+            close();
+        }
+
+        private void complete() {
+            emitter.complete();
+            close();
+        }
+
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                connections.release();
+                dispose();
+            }
+        }
+
+        private void dispose() {
+            Disposable current = subscription;
+            if (current != null) {
+                current.dispose();
+            }
+            Disposable timer = heartbeats;
+            if (timer != null) {
+                timer.dispose();
+            }
+        }
+    }
+}
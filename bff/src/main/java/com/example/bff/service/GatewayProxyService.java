@@ -0,0 +1,384 @@
+package com.example.bff.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClientRequest;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Forwards BFF requests to the gateway.
+ * <p>
+ * In streaming mode ({@code bff.proxy.streaming.enabled=true}) neither the request nor the
+ * response body is held in memory: the servlet input stream is read chunk by chunk into the
+ * upstream request, and upstream chunks are written to the servlet output stream as they arrive,
+ * with at most {@value #PREFETCH} chunks buffered in between. Heap usage per request therefore
+ * does not grow with payload size.
+ * <p>
+ * Upstream status and headers (Content-Type, Content-Length, Cache-Control, ETag, ...) are passed
+ * through, except hop-by-hop headers and headers the BFF owns itself (cookies, CORS).
+ * <p>
+ * GETs on the routes configured for {@link RequestHedger} are hedged while waiting for the status
+ * line and headers; the body is only read from the attempt that answered first.
+ * <p>
+ * Each request-bound gateway call counts against the {@link AdaptiveConcurrencyLimiter} until its
+ * status line and headers arrive. Coalesced followers and long-lived event streams do not.
+ * <p>
+ * The browser's {@code Accept-Encoding} is forwarded and compressed upstream bodies are passed on
+ * as they are, with their {@code Content-Encoding}; the BFF never decompresses them. Proxied body
+ * sizes are recorded as {@code bff.proxy.response.bytes{encoding, kind=wire|logical}}: the bytes as
+ * received and, where known, their uncompressed size (identity bodies, and gzip bodies via their
+ * trailer; not brotli).
+ */
+@Service
+public class GatewayProxyService {
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final int PREFETCH = 4;
+
+    /**
+     * Request headers forwarded to the gateway. Everything else (cookies, Authorization, ...) stays at the BFF.
+     */
+    private static final List<String> FORWARDED_REQUEST_HEADERS = List.of(
+            HttpHeaders.CONTENT_TYPE,
+            HttpHeaders.CONTENT_LENGTH,
+            HttpHeaders.ACCEPT,
+            HttpHeaders.ACCEPT_LANGUAGE,
+            HttpHeaders.ACCEPT_ENCODING,
+            HttpHeaders.IF_NONE_MATCH,
+            HttpHeaders.IF_MODIFIED_SINCE,
+            HttpHeaders.IF_MATCH,
+            HttpHeaders.IF_UNMODIFIED_SINCE,
+            HttpHeaders.RANGE);
+
+    /**
+     * Response headers never copied from the gateway: hop-by-hop headers (RFC 9110 section 7.6.1)
+     * plus cookies and CORS headers, which the BFF sets itself.
+     */
+    private static final Set<String> DROPPED_RESPONSE_HEADERS = Set.of(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization",
+            "te", "trailer", "transfer-encoding", "upgrade", "set-cookie");
+
+    private final WebClient webClient;
+    private final RequestHedger hedger;
+    private final RequestCoalescer coalescer;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final MeterRegistry meterRegistry;
+    private final boolean streaming;
+
+    public GatewayProxyService(WebClient.Builder webClientBuilder,
+                               RequestHedger hedger,
+                               RequestCoalescer coalescer,
+                               AdaptiveConcurrencyLimiter concurrencyLimiter,
+                               MeterRegistry meterRegistry,
+                               @Value("${bff.proxy.streaming.enabled:true}") boolean streaming) {
+        this.webClient = webClientBuilder.build();
+        this.hedger = hedger;
+        this.coalescer = coalescer;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.meterRegistry = meterRegistry;
+        this.streaming = streaming;
+    }
+
+    /**
+     * Forwards the request to {@code targetUri}, streaming or buffering depending on configuration.
+     *
+     * @param accessToken bearer token for the gateway, or {@code null} for public endpoints
+     */
+    public ResponseEntity<?> forward(HttpServletRequest request, URI targetUri, String accessToken) {
+        return streaming ? stream(request, targetUri, accessToken) : buffer(request, targetUri, accessToken);
+    }
+
+    /**
+     * Forwards the request and pipes the upstream response body to the client chunk by chunk.
+     * Only the status line and headers are awaited here; the body is written on the MVC async thread.
+     */
+    public ResponseEntity<StreamingResponseBody> stream(HttpServletRequest request, URI targetUri, String accessToken) {
+        return streamingResponse(open(request, targetUri, accessToken, headers -> { }));
+    }
+
+    /**
+     * Sends the request and waits for the upstream status and headers. The caller must consume the
+     * returned body (or hand it to {@link #streamingResponse}) to release the connection.
+     * <p>
+     * Identical GETs in flight at the same time share one upstream call ({@link RequestCoalescer}).
+     *
+     * @param customizer applied to the outgoing headers after the forwarded ones
+     */
+    public ResponseEntity<Flux<DataBuffer>> open(HttpServletRequest request, URI targetUri, String accessToken,
+                                                 Consumer<HttpHeaders> customizer) {
+        return open(request, targetUri, accessToken, customizer, null);
+    }
+
+    /**
+     * Like {@link #open(HttpServletRequest, URI, String, Consumer)}, failing once the gateway has
+     * been silent for {@code responseTimeout}.
+     *
+     * @param responseTimeout overrides the client's response timeout, or {@code null} to keep it
+     */
+    public ResponseEntity<Flux<DataBuffer>> open(HttpServletRequest request, URI targetUri, String accessToken,
+                                                 Consumer<HttpHeaders> customizer, Duration responseTimeout) {
+        HttpMethod method = HttpMethod.valueOf(request.getMethod());
+        HttpHeaders headers = outgoingHeaders(request, accessToken, customizer);
+        Supplier<ResponseEntity<Flux<DataBuffer>>> call = () -> {
+            ResponseEntity<Flux<DataBuffer>> upstream = concurrencyLimiter.execute(() -> hedger.hedge(method, targetUri.getPath(),
+                            () -> exchange(method, request, targetUri, headers, responseTimeout).toEntityFlux(DataBuffer.class),
+                            GatewayProxyService::release)
+                    .block());
+            Flux<DataBuffer> body = upstream.getBody() != null ? upstream.getBody() : Flux.empty();
+            return new ResponseEntity<>(body, upstream.getHeaders(), upstream.getStatusCode());
+        };
+        if (HttpMethod.GET.equals(method) && coalescer.isEnabled()) {
+            // The outgoing headers include the bearer token, so only requests of the same session match
+            return coalescer.execute(targetUri + "\n" + headers, call);
+        }
+        return call.get();
+    }
+
+    /**
+     * Opens a long-lived response such as {@code text/event-stream}: like {@link #open}, but never
+     * hedged, coalesced or counted against the concurrency limit, and the upstream may stay silent for up to {@code idleTimeout} instead of
+     * the client's response timeout.
+     */
+    public ResponseEntity<Flux<DataBuffer>> openStream(HttpServletRequest request, URI targetUri, String accessToken,
+                                                       Duration idleTimeout) {
+        HttpMethod method = HttpMethod.valueOf(request.getMethod());
+        HttpHeaders headers = outgoingHeaders(request, accessToken, h -> { });
+        ResponseEntity<Flux<DataBuffer>> upstream = exchange(method, request, targetUri, headers, idleTimeout)
+                .toEntityFlux(DataBuffer.class)
+                .block();
+        Flux<DataBuffer> body = upstream.getBody() != null ? upstream.getBody() : Flux.empty();
+        return new ResponseEntity<>(body, upstream.getHeaders(), upstream.getStatusCode());
+    }
+
+    /**
+     * Drains an opened response that will not be used, so its connection goes back to the pool.
+     */
+    private static void release(ResponseEntity<Flux<DataBuffer>> unused) {
+        if (unused.getBody() != null) {
+            unused.getBody().map(DataBufferUtils::release).subscribe(released -> { }, error -> { });
+        }
+    }
+
+    /**
+     * Turns an opened upstream response into a streaming client response.
+     */
+    public ResponseEntity<StreamingResponseBody> streamingResponse(ResponseEntity<Flux<DataBuffer>> upstream) {
+        Flux<DataBuffer> body = upstream.getBody();
+        BodySize size = new BodySize(upstream.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        StreamingResponseBody writer = outputStream -> {
+            // Write off the Netty event loop; publishOn's bounded queue provides the backpressure
+            Flux<DataBuffer> chunks = body
+                    .publishOn(Schedulers.boundedElastic(), PREFETCH)
+                    .doOnNext(size::add)
+                    .doOnComplete(size::record)
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+            DataBufferUtils.write(chunks, outputStream)
+                    .map(DataBufferUtils::release)
+                    .blockLast();
+        };
+
+        return ResponseEntity.status(upstream.getStatusCode())
+                .headers(responseHeaders(upstream.getHeaders()))
+                .body(writer);
+    }
+
+    /**
+     * Forwards the request and collects the upstream response into memory.
+     */
+    public ResponseEntity<byte[]> buffer(HttpServletRequest request, URI targetUri, String accessToken) {
+        HttpMethod method = HttpMethod.valueOf(request.getMethod());
+        HttpHeaders headers = outgoingHeaders(request, accessToken, h -> { });
+        ResponseEntity<byte[]> upstream = concurrencyLimiter.execute(() -> hedger.hedge(method, targetUri.getPath(),
+                        () -> exchange(method, request, targetUri, headers, null).toEntity(byte[].class))
+                .block());
+
+        if (upstream.getBody() != null) {
+            BodySize size = new BodySize(upstream.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+            size.add(DefaultDataBufferFactory.sharedInstance.wrap(upstream.getBody()));
+            size.record();
+        }
+        return ResponseEntity.status(upstream.getStatusCode())
+                .headers(responseHeaders(upstream.getHeaders()))
+                .body(upstream.getBody());
+    }
+
+    /**
+     * Sends a gateway call that is not tied to the servlet request under the same adaptive limit
+     * and hedging as {@link #buffer}; the caller holds the downstream's bulkhead permit.
+     *
+     * @param jsonBody body serialized as JSON, or {@code null} for none
+     * @throws AdaptiveConcurrencyLimiter.LimitExceededException 503 if the limit is reached
+     */
+    public ResponseEntity<byte[]> send(HttpMethod method, URI targetUri, String accessToken, Object jsonBody) {
+        return concurrencyLimiter.execute(() -> hedger.hedge(method, targetUri.getPath(),
+                        () -> call(method, targetUri, accessToken, jsonBody))
+                .block());
+    }
+
+    /**
+     * Issues a gateway call that is not tied to the servlet request, e.g. a login prefetch.
+     * The response is buffered and error statuses are returned like any other response.
+     *
+     * @param jsonBody body serialized as JSON, or {@code null} for none
+     */
+    public Mono<ResponseEntity<byte[]>> call(HttpMethod method, URI targetUri, String accessToken, Object jsonBody) {
+        WebClient.RequestBodySpec spec = webClient.method(method)
+                .uri(targetUri)
+                .headers(h -> {
+                    h.setBearerAuth(accessToken);
+                    h.setAccept(List.of(MediaType.APPLICATION_JSON));
+                });
+        WebClient.RequestHeadersSpec<?> request = jsonBody != null
+                ? spec.contentType(MediaType.APPLICATION_JSON).bodyValue(jsonBody)
+                : spec;
+        return request.retrieve()
+                .onStatus(status -> true, response -> Mono.empty())
+                .toEntity(byte[].class);
+    }
+
+    private static HttpHeaders outgoingHeaders(HttpServletRequest request, String accessToken, Consumer<HttpHeaders> customizer) {
+        HttpHeaders headers = new HttpHeaders();
+        for (String name : FORWARDED_REQUEST_HEADERS) {
+            String value = request.getHeader(name);
+            if (value != null) {
+                headers.set(name, value);
+            }
+        }
+        if (accessToken != null) {
+            headers.setBearerAuth(accessToken);
+        }
+        customizer.accept(headers);
+        return headers;
+    }
+
+    /**
+     * @param idleTimeout overrides the client's response timeout, or {@code null} to keep it
+     */
+    private WebClient.ResponseSpec exchange(HttpMethod method, HttpServletRequest request, URI targetUri, HttpHeaders headers,
+                                            Duration idleTimeout) {
+        WebClient.RequestBodySpec spec = webClient.method(method)
+                .uri(targetUri)
+                .headers(h -> h.addAll(headers))
+                .httpRequest(r -> {
+                    if (idleTimeout != null) {
+                        r.<HttpClientRequest>getNativeRequest().responseTimeout(idleTimeout);
+                    }
+                });
+        // A body inserter on a bodiless request would still make the client send Transfer-Encoding: chunked
+        WebClient.RequestHeadersSpec<?> call = hasBody(request)
+                ? spec.body(BodyInserters.fromDataBuffers(requestBody(request)))
+                : spec;
+        return call.retrieve()
+                // Error statuses are proxied to the client like any other response
+                .onStatus(status -> true, response -> Mono.empty());
+    }
+
+    /**
+     * Whether the client sent a body: a positive {@code Content-Length} or a {@code Transfer-Encoding}.
+     */
+    private static boolean hasBody(HttpServletRequest request) {
+        return request.getContentLengthLong() > 0 || request.getHeader(HttpHeaders.TRANSFER_ENCODING) != null;
+    }
+
+    /**
+     * Reads the servlet request body lazily, one chunk per upstream demand. The blocking reads
+     * run on the bounded elastic scheduler instead of the Netty event loop.
+     */
+    private static Flux<DataBuffer> requestBody(HttpServletRequest request) {
+        return DataBufferUtils.readInputStream(request::getInputStream, DefaultDataBufferFactory.sharedInstance, CHUNK_SIZE)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Upstream response headers that may be passed on to the client.
+     */
+    public static HttpHeaders responseHeaders(HttpHeaders upstream) {
+        HttpHeaders headers = new HttpHeaders();
+        upstream.forEach((name, values) -> {
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (!DROPPED_RESPONSE_HEADERS.contains(lower) && !lower.startsWith("access-control-")) {
+                headers.addAll(name, values);
+            }
+        });
+        return headers;
+    }
+
+    /**
+     * Size of one proxied body: bytes as received and, where it can be known without decompressing,
+     * the uncompressed size. For gzip that is the ISIZE field in the last four bytes of the stream.
+     */
+    private final class BodySize {
+
+        private final String encoding;
+        private final byte[] tail = new byte[4];
+        private long wireBytes;
+
+        BodySize(String contentEncoding) {
+            this.encoding = encodingTag(contentEncoding);
+        }
+
+        void add(DataBuffer chunk) {
+            int length = chunk.readableByteCount();
+            int kept = Math.min(length, tail.length);
+            System.arraycopy(tail, kept, tail, 0, tail.length - kept);
+            for (int i = 0; i < kept; i++) {
+                tail[tail.length - kept + i] = chunk.getByte(chunk.readPosition() + length - kept + i);
+            }
+            wireBytes += length;
+        }
+
+        void record() {
+            bytes("wire").increment(wireBytes);
+            if ("identity".equals(encoding)) {
+                bytes("logical").increment(wireBytes);
+            } else if ("gzip".equals(encoding) && wireBytes >= 18) {
+                long isize = (tail[0] & 0xFFL) | (tail[1] & 0xFFL) << 8 | (tail[2] & 0xFFL) << 16 | (tail[3] & 0xFFL) << 24;
+                bytes("logical").increment(isize);
+            }
+        }
+
+        private Counter bytes(String kind) {
+            return Counter.builder("bff.proxy.response.bytes")
+                    .description("Proxied response body bytes as received (wire) and uncompressed (logical)")
+                    .baseUnit("bytes")
+                    .tag("encoding", encoding)
+                    .tag("kind", kind)
+                    .register(meterRegistry);
+        }
+
+        private static String encodingTag(String contentEncoding) {
+            if (contentEncoding == null || contentEncoding.isBlank()) {
+                return "identity";
+            }
+            String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+            return switch (encoding) {
+                case "gzip", "x-gzip" -> "gzip";
+                case "br", "deflate", "zstd", "identity" -> encoding;
+                default -> "other";
+            };
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.bff.service;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * {@link SessionStore} that writes through to Redis and reads from a local {@link OffHeapSessionStore}.
+ * <p>
+ * Every write goes to Redis first, so sessions survive restarts and stay visible to the other BFF
+ * instances and to the background refresh scheduler. Reads are served locally; a session this node
+ * has not seen yet is read through from Redis (tokens and remaining TTL in one round trip) and kept
+ * locally from then on.
+ * <p>
+ * Local copies are dropped on the {@link SessionCache} invalidation channel, which carries every
+ * refresh and logout of any instance, so the next read fetches the current tokens from Redis.
+ * Invalidations published by this node are skipped: its local copy was already updated or dropped
+ * by the write that triggered them.
+ */
+public class HybridSessionStore implements SessionStore, MessageListener, AutoCloseable {
+
+    private final RedisSessionStore redis;
+    private final OffHeapSessionStore local;
+    private final String nodeId;
+
+    public HybridSessionStore(RedisSessionStore redis, OffHeapSessionStore local, SessionCache sessionCache,
+                              ClusterMessaging messaging) {
+        this.redis = redis;
+        this.local = local;
+        this.nodeId = sessionCache.nodeId();
+        messaging.subscribe(this, SessionCache.INVALIDATION_CHANNEL);
+    }
+
+    @Override
+    public void create(String jti, OAuth2AuthorizedClient client, String idToken, Duration ttl) {
+        redis.create(jti, client, idToken, ttl);
+        local.create(jti, client, idToken, ttl);
+    }
+
+    @Override
+    public boolean update(String jti, OAuth2AuthorizedClient client, Duration ttl) {
+        if (!redis.update(jti, client, ttl)) {
+            local.delete(jti);
+            return false;
+        }
+        // Without a local copy the remaining TTL is only known to Redis; the next read fetches it
+        local.replace(jti, client);
+        return true;
+    }
+
+    @Override
+    public OAuth2AuthorizedClient load(String jti) {
+        OAuth2AuthorizedClient client = local.load(jti);
+        if (client != null) {
+            return client;
+        }
+        RedisSessionStore.Expiring session = redis.loadExpiring(jti);
+        if (session == null) {
+            // Session in the layout of older BFF versions, or gone
+            return redis.load(jti);
+        }
+        local.create(jti, session.client(), null, session.ttl());
+        return session.client();
+    }
+
+    /**
+     * Read-through copies carry no ID token; it is only needed at logout and then read from Redis.
+     */
+    @Override
+    public String loadIdToken(String jti) {
+        String idToken = local.loadIdToken(jti);
+        return idToken != null ? idToken : redis.loadIdToken(jti);
+    }
+
+    @Override
+    public boolean touch(String jti, Duration ttl) {
+        boolean extended = redis.touch(jti, ttl);
+        if (extended) {
+            local.touch(jti, ttl);
+        } else {
+            local.delete(jti);
+        }
+        return extended;
+    }
+
+    @Override
+    public void delete(String jti) {
+        redis.delete(jti);
+        local.delete(jti);
+    }
+
+    @Override
+    public void deleteAll(Collection<String> jtis) {
+        redis.deleteAll(jtis);
+        jtis.forEach(local::delete);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(':');
+        if (separator < 0 || body.substring(0, separator).equals(nodeId)) {
+            return;
+        }
+        for (String jti : SessionCache.jtis(body.substring(separator + 1))) {
+            local.delete(jti);
+        }
+    }
+
+    @Override
+    public void close() {
+        local.close();
+    }
+}
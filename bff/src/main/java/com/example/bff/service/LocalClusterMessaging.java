@@ -0,0 +1,21 @@
+package com.example.bff.service;
+
+import org.springframework.data.redis.connection.MessageListener;
+
+/**
+ * {@link ClusterMessaging} of a BFF that keeps its sessions to itself ({@code bff.session.store=local}).
+ * <p>
+ * Every publisher has already applied its change on this node, and no other node holds a copy, so
+ * there is nothing to send. Messages that only other services publish (user deletions) are not
+ * received; proxied deletions are still handled on the request path.
+ */
+public class LocalClusterMessaging implements ClusterMessaging {
+
+    @Override
+    public void publish(String channel, String message) {
+    }
+
+    @Override
+    public void subscribe(MessageListener listener, String channel) {
+    }
+}
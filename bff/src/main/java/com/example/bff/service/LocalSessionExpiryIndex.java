@@ -0,0 +1,98 @@
+package com.example.bff.service;
+
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-process {@link SessionExpiryIndex} for {@code bff.session.store=local}, fed by {@link OffHeapSessionStore}.
+ * <p>
+ * Same semantics as the Redis index: sessions ordered by access-token expiry, and claiming pushes a
+ * session's position forward by the claim TTL until a refresh re-indexes it. Each session's position
+ * is only changed under its own map entry, so the order never holds two positions for one session.
+ */
+public class LocalSessionExpiryIndex implements SessionExpiryIndex {
+
+    private final Map<String, Due> positions = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Due> order = new ConcurrentSkipListSet<>();
+
+    /**
+     * Indexes the session by access-token expiry, or drops it if there is nothing to refresh ahead of time.
+     */
+    void track(String jti, OAuth2AuthorizedClient client) {
+        Long score = SessionExpiryIndex.score(client);
+        if (score == null) {
+            remove(jti);
+            return;
+        }
+        positions.compute(jti, (key, previous) -> move(previous, new Due(score, key)));
+    }
+
+    @Override
+    public void remove(String jti) {
+        positions.computeIfPresent(jti, (key, previous) -> move(previous, null));
+    }
+
+    @Override
+    public List<String> claimDue(Instant horizon, int batchSize, Duration claimTtl) {
+        List<Due> candidates = new ArrayList<>(batchSize);
+        for (Due due : order) {
+            if (candidates.size() >= batchSize || due.atMillis() > horizon.toEpochMilli()) {
+                break;
+            }
+            candidates.add(due);
+        }
+        long claimedUntil = Instant.now().plus(claimTtl).toEpochMilli();
+        List<String> claimed = new ArrayList<>(candidates.size());
+        for (Due due : candidates) {
+            // Skipped if the session was re-indexed, removed or claimed since it was read
+            boolean[] won = new boolean[1];
+            positions.computeIfPresent(due.jti(), (key, current) -> {
+                if (!current.equals(due)) {
+                    return current;
+                }
+                won[0] = true;
+                return move(current, new Due(claimedUntil, key));
+            });
+            if (won[0]) {
+                claimed.add(due.jti());
+            }
+        }
+        return claimed;
+    }
+
+    @Override
+    public Instant earliestExpiry() {
+        Iterator<Due> first = order.iterator();
+        return first.hasNext() ? Instant.ofEpochMilli(first.next().atMillis()) : null;
+    }
+
+    private Due move(Due previous, Due next) {
+        if (previous != null) {
+            order.remove(previous);
+        }
+        if (next != null) {
+            order.add(next);
+        }
+        return next;
+    }
+
+    /**
+     * Position of a session in the index.
+     */
+    private record Due(long atMillis, String jti) implements Comparable<Due> {
+
+        @Override
+        public int compareTo(Due other) {
+            int byTime = Long.compare(atMillis, other.atMillis);
+            return byTime != 0 ? byTime : jti.compareTo(other.jti);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.bff.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process {@link SubjectSessionIndex} for {@code bff.session.store=local}.
+ * <p>
+ * Mirrors the Redis layout: per subject, each session with the latest time it can still be alive.
+ * A login drops the subject's entries past that time, and a subject without logins for one maximum
+ * session lifetime is dropped altogether.
+ */
+public class LocalSubjectSessionIndex implements SubjectSessionIndex {
+
+    private final Cache<String, Map<String, Long>> sessionsBySubject;
+    private final Duration maxLifetime;
+
+    public LocalSubjectSessionIndex(Duration maxLifetime) {
+        this.maxLifetime = maxLifetime;
+        this.sessionsBySubject = Caffeine.newBuilder()
+                .expireAfterWrite(maxLifetime)
+                .build();
+    }
+
+    @Override
+    public void track(String subject, String jti) {
+        long now = System.currentTimeMillis();
+        sessionsBySubject.asMap().compute(subject, (key, sessions) -> {
+            Map<String, Long> live = sessions != null ? sessions : new ConcurrentHashMap<>();
+            live.values().removeIf(until -> until <= now);
+            live.put(jti, now + maxLifetime.toMillis());
+            return live;
+        });
+    }
+
+    @Override
+    public List<String> drain(String subject) {
+        Map<String, Long> sessions = sessionsBySubject.asMap().remove(subject);
+        if (sessions == null) {
+            return List.of();
+        }
+        long now = System.currentTimeMillis();
+        return sessions.entrySet().stream()
+                .filter(session -> session.getValue() > now)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+}
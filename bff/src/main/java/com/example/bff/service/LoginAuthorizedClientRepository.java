@@ -0,0 +1,94 @@
+package com.example.bff.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.web.OAuth2AuthorizedClientRepository;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Bounded {@link OAuth2AuthorizedClientRepository} for the login handshake.
+ * <p>
+ * Spring Security stores the authorized client here when the authorization code is exchanged; the
+ * BFF only reads it once, in {@code /bff/login/success}, to copy the tokens into its own session
+ * store, and removes it right after. Boot's default {@code InMemoryOAuth2AuthorizedClientService}
+ * never evicts, so it grew by one entry per login. This one is bounded by
+ * {@code bff.oauth2.authorized-clients.max-size} and drops entries that were never picked up
+ * after {@code bff.oauth2.authorized-clients.ttl-seconds}.
+ * <p>
+ * Entries are keyed by login rather than by user: each login gets a random handle, kept in its
+ * HTTP session (which survives the session id change on login), so two concurrent logins of the
+ * same user never read or remove each other's tokens. The tokens themselves stay in this process
+ * and are not written to the HTTP session.
+ * <p>
+ * Entry count, hits and evictions are exported as {@code cache.*{cache="bff.oauth2.authorized-clients"}}.
+ */
+@Component
+public class LoginAuthorizedClientRepository implements OAuth2AuthorizedClientRepository {
+
+    private static final String CACHE_NAME = "bff.oauth2.authorized-clients";
+    private static final String LOGIN_ATTRIBUTE = LoginAuthorizedClientRepository.class.getName() + ".LOGIN";
+
+    private final Cache<Key, OAuth2AuthorizedClient> clients;
+
+    public LoginAuthorizedClientRepository(MeterRegistry meterRegistry,
+                                           @Value("${bff.oauth2.authorized-clients.max-size:10000}") long maxSize,
+                                           @Value("${bff.oauth2.authorized-clients.ttl-seconds:300}") long ttlSeconds) {
+        this.clients = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, clients, CACHE_NAME);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends OAuth2AuthorizedClient> T loadAuthorizedClient(String clientRegistrationId, Authentication principal,
+                                                                     HttpServletRequest request) {
+        String login = login(request, false);
+        return login != null ? (T) clients.getIfPresent(new Key(clientRegistrationId, login)) : null;
+    }
+
+    @Override
+    public void saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal,
+                                     HttpServletRequest request, HttpServletResponse response) {
+        clients.put(new Key(authorizedClient.getClientRegistration().getRegistrationId(), login(request, true)),
+                authorizedClient);
+    }
+
+    @Override
+    public void removeAuthorizedClient(String clientRegistrationId, Authentication principal,
+                                       HttpServletRequest request, HttpServletResponse response) {
+        String login = login(request, false);
+        if (login != null) {
+            clients.invalidate(new Key(clientRegistrationId, login));
+        }
+    }
+
+    private static String login(HttpServletRequest request, boolean create) {
+        HttpSession session = request.getSession(create);
+        if (session == null) {
+            return null;
+        }
+        String login = (String) session.getAttribute(LOGIN_ATTRIBUTE);
+        if (login == null && create) {
+            login = UUID.randomUUID().toString();
+            session.setAttribute(LOGIN_ATTRIBUTE, login);
+        }
+        return login;
+    }
+
+    private record Key(String clientRegistrationId, String login) {
+    }
+}
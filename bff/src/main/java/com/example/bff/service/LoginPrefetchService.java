@@ -0,0 +1,117 @@
+package com.example.bff.service;
+
+import com.example.bff.service.ProxyResponseCache.CachedResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Warms the {@link ProxyResponseCache} of a new session at login.
+ * <p>
+ * Right after login the frontend loads the same resources every time. With
+ * {@code bff.prefetch.enabled}, {@code loginSuccess} hands the fresh access token to
+ * {@link #prefetch}. This fires GETs for {@code bff.prefetch.paths} (gateway paths that must also be
+ * under {@code bff.proxy.cache.paths}) while the browser follows the redirect, and stores the 200
+ * responses in the session's cache, fresh for {@code bff.prefetch.fresh-seconds}. The first page
+ * render is then answered locally. Prefetches run on the HTTP client's event loop, never block the
+ * login, and are abandoned after {@code bff.prefetch.timeout-ms}.
+ * <p>
+ * Metrics:
+ * <ul>
+ *   <li>{@code bff.prefetch.requests{outcome=stored|skipped|failed}}</li>
+ *   <li>{@code bff.prefetch.entries{result=used|unused}} - prefetched entries the session asked for
+ *       before they expired; the prefetch hit rate is used / (used + unused)</li>
+ * </ul>
+ */
+@Service
+@Slf4j
+public class LoginPrefetchService {
+
+    private final GatewayProxyService gatewayProxyService;
+    private final ProxyResponseCache cache;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final List<String> paths;
+    private final Duration timeout;
+    private final Duration freshFor;
+    private final String gatewayUrl;
+
+    public LoginPrefetchService(GatewayProxyService gatewayProxyService,
+                                ProxyResponseCache cache,
+                                MeterRegistry meterRegistry,
+                                @Value("${bff.prefetch.enabled:false}") boolean enabled,
+                                @Value("${bff.prefetch.paths:/profile,/orders}") List<String> paths,
+                                @Value("${bff.prefetch.timeout-ms:2000}") long timeoutMs,
+                                @Value("${bff.prefetch.fresh-seconds:30}") long freshSeconds,
+                                @Value("${bff.gateway.url}") String gatewayUrl) {
+        this.gatewayProxyService = gatewayProxyService;
+        this.cache = cache;
+        this.meterRegistry = meterRegistry;
+        this.paths = paths.stream().filter(path -> {
+            if (!cache.isCacheable(path)) {
+                log.warn("Ignoring prefetch path {}: not under bff.proxy.cache.paths", path);
+                return false;
+            }
+            return true;
+        }).toList();
+        this.enabled = enabled && !this.paths.isEmpty();
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.freshFor = Duration.ofSeconds(freshSeconds);
+        this.gatewayUrl = gatewayUrl;
+    }
+
+    /**
+     * Starts the prefetches for a new session and returns immediately.
+     */
+    public void prefetch(String jti, String accessToken) {
+        if (!enabled) {
+            return;
+        }
+        for (String path : paths) {
+            // Same URI the proxy builds for /bff/api + path, so the entry is found by the first request
+            URI targetUri = URI.create(gatewayUrl + path);
+            gatewayProxyService.call(HttpMethod.GET, targetUri, accessToken, null)
+                    .timeout(timeout)
+                    .subscribe(response -> store(jti, targetUri, response), error -> {
+                        log.debug("Prefetch of {} failed: {}", path, error.getMessage());
+                        record("failed");
+                    });
+        }
+    }
+
+    private void store(String jti, URI targetUri, ResponseEntity<byte[]> response) {
+        byte[] body = response.getBody() != null ? response.getBody() : new byte[0];
+        if (response.getStatusCode().value() != HttpStatus.OK.value() || body.length > cache.maxEntryBytes()) {
+            record("skipped");
+            return;
+        }
+        HttpHeaders headers = GatewayProxyService.responseHeaders(response.getHeaders());
+        String upstreamEtag = headers.getETag();
+        String etag = upstreamEtag != null ? upstreamEtag : CachingProxyService.computeEtag(body);
+        headers.setETag(etag);
+        headers.setContentLength(body.length);
+
+        cache.putPrefetched(jti, targetUri.toString(), new CachedResponse(HttpHeaders.readOnlyHttpHeaders(headers), body,
+                upstreamEtag, etag, Instant.now().plus(freshFor)));
+        record("stored");
+    }
+
+    private void record(String outcome) {
+        Counter.builder("bff.prefetch.requests")
+                .description("Login prefetches by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.bff.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process {@link SessionStore} that keeps serialized sessions outside the Java heap.
+ * <p>
+ * Each session is one native memory segment holding the {@link SessionCodec} bytes of the tokens
+ * followed by the ID token, so a large session population adds no GC pressure; the heap only holds
+ * the jti index. Segments come from automatic arenas: closing a shared arena per session would stop
+ * every thread of the JVM on each logout and refresh. A replaced, deleted or expired session's memory
+ * is returned once the GC collects its entry; it counts against {@code -XX:MaxDirectMemorySize},
+ * which triggers a collection when reached.
+ * <p>
+ * Sessions are also kept ordered by expiry. Expired sessions are dropped when they are read and by a
+ * sweep that runs on writes at most every {@code bff.session.local.sweep-interval-seconds}, visiting
+ * only the expired ones. Live native memory is bounded by {@code bff.session.local.max-bytes}; when
+ * full, the sessions closest to expiry are evicted.
+ * <p>
+ * Given a {@link LocalSessionExpiryIndex} ({@code bff.session.store=local}), the store keeps it in
+ * step with every write, so the background refresh scheduler finds sessions due for a refresh
+ * without Redis.
+ * <p>
+ * Metrics: {@code bff.session.local.entries}, {@code bff.session.local.bytes} and
+ * {@code bff.session.local.evictions{reason=expired|capacity}}.
+ */
+public class OffHeapSessionStore implements SessionStore, AutoCloseable {
+
+    private final SessionCodec sessionCodec;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Expiry> expiryOrder = new ConcurrentSkipListSet<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong nextSweep = new AtomicLong();
+    private final long maxBytes;
+    private final long sweepIntervalMillis;
+    private final Counter expiredEvictions;
+    private final Counter capacityEvictions;
+    private final LocalSessionExpiryIndex expiryIndex;
+
+    public OffHeapSessionStore(SessionCodec sessionCodec, MeterRegistry meterRegistry, long maxBytes, Duration sweepInterval) {
+        this(sessionCodec, meterRegistry, maxBytes, sweepInterval, null);
+    }
+
+    /**
+     * @param expiryIndex index to keep in step with the stored sessions, or {@code null} if another store maintains one
+     */
+    public OffHeapSessionStore(SessionCodec sessionCodec, MeterRegistry meterRegistry, long maxBytes, Duration sweepInterval,
+                               LocalSessionExpiryIndex expiryIndex) {
+        this.sessionCodec = sessionCodec;
+        this.expiryIndex = expiryIndex;
+        this.maxBytes = maxBytes;
+        this.sweepIntervalMillis = sweepInterval.toMillis();
+        Gauge.builder("bff.session.local.entries", entries, Map::size)
+                .description("Sessions held by the local off-heap session store")
+                .register(meterRegistry);
+        Gauge.builder("bff.session.local.bytes", usedBytes, AtomicLong::get)
+                .description("Native memory used by the local off-heap session store")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.expiredEvictions = evictions(meterRegistry, "expired");
+        this.capacityEvictions = evictions(meterRegistry, "capacity");
+    }
+
+    @Override
+    public void create(String jti, OAuth2AuthorizedClient client, String idToken, Duration ttl) {
+        byte[] idTokenBytes = idToken != null ? idToken.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        put(jti, allocate(jti, sessionCodec.serialize(client), idTokenBytes, System.currentTimeMillis() + ttl.toMillis()));
+        if (expiryIndex != null) {
+            expiryIndex.track(jti, client);
+        }
+    }
+
+    @Override
+    public boolean update(String jti, OAuth2AuthorizedClient client, Duration ttl) {
+        boolean updated = replace(jti, client);
+        if (expiryIndex != null) {
+            if (updated) {
+                expiryIndex.track(jti, client);
+            } else {
+                expiryIndex.remove(jti);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Replaces the tokens of an existing session, keeping its ID token and remaining TTL.
+     *
+     * @return {@code false} if the session does not exist
+     */
+    boolean replace(String jti, OAuth2AuthorizedClient client) {
+        byte[] value = sessionCodec.serialize(client);
+        Entry[] replaced = new Entry[1];
+        Entry updated = entries.computeIfPresent(jti, (key, current) -> {
+            if (current.isExpired(System.currentTimeMillis())) {
+                replaced[0] = current;
+                return null;
+            }
+            byte[] idToken = current.read(current.clientLength, current.idTokenLength);
+            replaced[0] = current;
+            return allocate(jti, value, idToken, current.expiry.atMillis());
+        });
+        release(replaced[0]);
+        if (updated != null) {
+            expiryOrder.add(updated.expiry);
+            ensureCapacity();
+        }
+        return updated != null;
+    }
+
+    @Override
+    public OAuth2AuthorizedClient load(String jti) {
+        byte[] value = read(jti, true);
+        return value != null ? (OAuth2AuthorizedClient) sessionCodec.deserialize(value) : null;
+    }
+
+    @Override
+    public String loadIdToken(String jti) {
+        byte[] value = read(jti, false);
+        return value != null && value.length > 0 ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+
+    @Override
+    public boolean touch(String jti, Duration ttl) {
+        Entry entry = live(jti);
+        if (entry == null) {
+            return false;
+        }
+        // Concurrent touches may leave an extra key behind; it no longer matches the entry and is skipped
+        Expiry previous = entry.expiry;
+        Expiry extended = expiry(jti, System.currentTimeMillis() + ttl.toMillis());
+        entry.expiry = extended;
+        expiryOrder.add(extended);
+        expiryOrder.remove(previous);
+        return true;
+    }
+
+    @Override
+    public void delete(String jti) {
+        release(entries.remove(jti));
+        if (expiryIndex != null) {
+            expiryIndex.remove(jti);
+        }
+    }
+
+    @Override
+    public void close() {
+        entries.keySet().forEach(this::delete);
+    }
+
+    private byte[] read(String jti, boolean client) {
+        Entry entry = live(jti);
+        if (entry == null) {
+            return null;
+        }
+        // A concurrently replaced or deleted entry stays readable until it is collected
+        return client
+                ? entry.read(0, entry.clientLength)
+                : entry.read(entry.clientLength, entry.idTokenLength);
+    }
+
+    private Entry live(String jti) {
+        Entry entry = entries.get(jti);
+        if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+            if (entries.remove(jti, entry)) {
+                release(entry);
+                expiredEvictions.increment();
+            }
+            return null;
+        }
+        return entry;
+    }
+
+    private void put(String jti, Entry entry) {
+        release(entries.put(jti, entry));
+        expiryOrder.add(entry.expiry);
+        ensureCapacity();
+    }
+
+    private Entry allocate(String jti, byte[] client, byte[] idToken, long expiresAtMillis) {
+        MemorySegment segment = Arena.ofAuto().allocate(Math.max(1, client.length + idToken.length));
+        MemorySegment.copy(client, 0, segment, ValueLayout.JAVA_BYTE, 0, client.length);
+        MemorySegment.copy(idToken, 0, segment, ValueLayout.JAVA_BYTE, client.length, idToken.length);
+        usedBytes.addAndGet(segment.byteSize());
+        return new Entry(segment, client.length, idToken.length, expiry(jti, expiresAtMillis));
+    }
+
+    private Expiry expiry(String jti, long atMillis) {
+        return new Expiry(atMillis, sequence.incrementAndGet(), jti);
+    }
+
+    /**
+     * Accounts for an entry that was removed from the index; its segment is freed once unreachable.
+     */
+    private void release(Entry entry) {
+        if (entry != null) {
+            usedBytes.addAndGet(-entry.segment.byteSize());
+            expiryOrder.remove(entry.expiry);
+        }
+    }
+
+    private void ensureCapacity() {
+        long now = System.currentTimeMillis();
+        long sweepAt = nextSweep.get();
+        if ((now >= sweepAt || usedBytes.get() > maxBytes) && nextSweep.compareAndSet(sweepAt, now + sweepIntervalMillis)) {
+            for (Expiry soonest : expiryOrder) {
+                if (soonest.atMillis() > now) {
+                    break;
+                }
+                evict(soonest, expiredEvictions);
+            }
+        }
+        while (usedBytes.get() > maxBytes) {
+            Expiry soonest = expiryOrder.pollFirst();
+            if (soonest == null) {
+                return;
+            }
+            evict(soonest, capacityEvictions);
+        }
+    }
+
+    private void evict(Expiry expiry, Counter reason) {
+        expiryOrder.remove(expiry);
+        Entry entry = entries.get(expiry.jti());
+        if (entry != null && entry.expiry == expiry && entries.remove(expiry.jti(), entry)) {
+            release(entry);
+            reason.increment();
+        }
+    }
+
+    private static Counter evictions(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("bff.session.local.evictions")
+                .description("Sessions dropped by the local off-heap session store")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Position of a session in the expiry order; the sequence keeps sessions expiring in the same millisecond apart.
+     */
+    private record Expiry(long atMillis, long sequence, String jti) implements Comparable<Expiry> {
+
+        @Override
+        public int compareTo(Expiry other) {
+            int byTime = Long.compare(atMillis, other.atMillis);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * Native segment layout: tokens ({@code clientLength} bytes), then the ID token ({@code idTokenLength} bytes).
+     */
+    private static final class Entry {
+
+        private final MemorySegment segment;
+        private final int clientLength;
+        private final int idTokenLength;
+        private volatile Expiry expiry;
+
+        Entry(MemorySegment segment, int clientLength, int idTokenLength, Expiry expiry) {
+            this.segment = segment;
+            this.clientLength = clientLength;
+            this.idTokenLength = idTokenLength;
+            this.expiry = expiry;
+        }
+
+        boolean isExpired(long nowMillis) {
+            return nowMillis >= expiry.atMillis();
+        }
+
+        byte[] read(long offset, int length) {
+            return segment.asSlice(offset, length).toArray(ValueLayout.JAVA_BYTE);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.bff.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded, per-session cache of proxied GET responses.
+ * <p>
+ * Entries are keyed by session jti and target URI, so a response is only ever served back to the
+ * session that fetched it. The cache is bounded by total body bytes ({@code bff.proxy.cache.max-bytes})
+ * and only routes under {@code bff.proxy.cache.paths} are cached.
+ * <p>
+ * Any non-GET request through a session drops all of that session's entries, on every BFF instance
+ * (published on {@value #INVALIDATION_CHANNEL}, like {@link SessionCache}). The keys of each
+ * session's entries are indexed by jti, so this touches only that session's entries.
+ * <p>
+ * Metrics:
+ * <ul>
+ *   <li>{@code bff.proxy.cache.requests{result=fresh|revalidated|miss|bypass}} - hit ratio is
+ *       (fresh + revalidated) / total</li>
+ *   <li>{@code bff.proxy.cache.bytes.saved{source=downstream|client}} - body bytes not fetched
+ *       from the gateway, and not sent to the browser thanks to 304s</li>
+ *   <li>{@code cache.*{cache="bff.proxy.cache"}} - size and evictions</li>
+ *   <li>{@code bff.prefetch.entries{result=used|unused}} - login prefetches the session did or did not ask for</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class ProxyResponseCache implements MessageListener {
+
+    static final String INVALIDATION_CHANNEL = "bff:proxy-cache:invalidate";
+    private static final String CACHE_NAME = "bff.proxy.cache";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ClusterMessaging messaging;
+    private final MeterRegistry meterRegistry;
+    private final Cache<Key, CachedResponse> cache;
+    private final Cache<Key, Boolean> prefetched;
+    /**
+     * Keys of each session's entries. Changed only under the session's map entry, together with the cache.
+     */
+    private final Map<String, Set<Key>> keysBySession = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final List<String> paths;
+    private final int maxEntryBytes;
+    private final Duration freshFor;
+
+    public ProxyResponseCache(ClusterMessaging messaging,
+                              MeterRegistry meterRegistry,
+                              @Value("${bff.proxy.cache.enabled:true}") boolean enabled,
+                              @Value("${bff.proxy.cache.paths:/profile,/orders}") List<String> paths,
+                              @Value("${bff.proxy.cache.max-bytes:67108864}") long maxBytes,
+                              @Value("${bff.proxy.cache.max-entry-bytes:262144}") int maxEntryBytes,
+                              @Value("${bff.proxy.cache.fresh-seconds:5}") long freshSeconds,
+                              @Value("${bff.proxy.cache.ttl-seconds:300}") long ttlSeconds) {
+        this.messaging = messaging;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.paths = paths;
+        this.maxEntryBytes = maxEntryBytes;
+        this.freshFor = Duration.ofSeconds(freshSeconds);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, CachedResponse value) -> value.weight())
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .removalListener((Key key, CachedResponse value, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        unindex(key);
+                    }
+                })
+                .recordStats()
+                .build();
+        this.prefetched = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .scheduler(Scheduler.systemScheduler())
+                .removalListener((Key key, Boolean value, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        recordPrefetch("unused");
+                    }
+                })
+                .build();
+    }
+
+    @PostConstruct
+    void init() {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        if (enabled) {
+            messaging.subscribe(this, INVALIDATION_CHANNEL);
+        }
+    }
+
+    /**
+     * Whether GET responses for this gateway path are cached.
+     */
+    public boolean isCacheable(String path) {
+        if (!enabled) {
+            return false;
+        }
+        for (String prefix : paths) {
+            if (path.equals(prefix) || path.startsWith(prefix + "/") || path.startsWith(prefix + "?")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int maxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * When a response stored now stops being fresh.
+     */
+    public Instant freshUntil(Instant now) {
+        return now.plus(freshFor);
+    }
+
+    public CachedResponse get(String jti, String uri) {
+        Key key = new Key(jti, uri);
+        CachedResponse response = cache.getIfPresent(key);
+        if (response != null && prefetched.asMap().remove(key) != null) {
+            recordPrefetch("used");
+        }
+        return response;
+    }
+
+    public void put(String jti, String uri, CachedResponse response) {
+        put(new Key(jti, uri), response, false);
+    }
+
+    /**
+     * Stores a response fetched ahead of the session's first request, see {@link LoginPrefetchService}.
+     */
+    public void putPrefetched(String jti, String uri, CachedResponse response) {
+        put(new Key(jti, uri), response, true);
+    }
+
+    private void put(Key key, CachedResponse response, boolean prefetch) {
+        // Under the session's index entry, so an invalidation either sees the entry or runs before it exists
+        keysBySession.compute(key.jti(), (jti, keys) -> {
+            Set<Key> indexed = keys != null ? keys : ConcurrentHashMap.newKeySet();
+            indexed.add(key);
+            cache.put(key, response);
+            if (prefetch) {
+                prefetched.put(key, Boolean.TRUE);
+            }
+            return indexed;
+        });
+    }
+
+    /**
+     * Drops every entry of the session here and on the other BFF instances.
+     */
+    public void invalidateSession(String jti) {
+        if (!enabled) {
+            return;
+        }
+        evictSession(jti);
+        try {
+            messaging.publish(INVALIDATION_CHANNEL, nodeId + ":" + jti);
+        } catch (Exception e) {
+            // Other nodes still converge once their entries stop being fresh
+            log.warn("Failed to publish proxy cache invalidation: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(':');
+        if (separator < 0 || body.substring(0, separator).equals(nodeId)) {
+            return;
+        }
+        evictSession(body.substring(separator + 1));
+    }
+
+    private void evictSession(String jti) {
+        keysBySession.computeIfPresent(jti, (session, keys) -> {
+            cache.invalidateAll(keys);
+            prefetched.invalidateAll(keys);
+            return null;
+        });
+    }
+
+    /**
+     * Forgets the key of an evicted entry, unless it has been stored again since.
+     */
+    private void unindex(Key key) {
+        keysBySession.computeIfPresent(key.jti(), (jti, keys) -> {
+            if (!cache.asMap().containsKey(key)) {
+                keys.remove(key);
+            }
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    public void record(String result) {
+        Counter.builder("bff.proxy.cache.requests")
+                .description("Cacheable proxied GET requests by cache result")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private void recordPrefetch(String result) {
+        Counter.builder("bff.prefetch.entries")
+                .description("Prefetched responses by whether the session asked for them before expiry")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void recordBytesSaved(String source, long bytes) {
+        Counter.builder("bff.proxy.cache.bytes.saved")
+                .description("Response body bytes saved by the proxy cache")
+                .baseUnit("bytes")
+                .tag("source", source)
+                .register(meterRegistry)
+                .increment(bytes);
+    }
+
+    private record Key(String jti, String uri) {
+    }
+
+    /**
+     * A cached 200 response. {@code body == null} marks a URI whose responses are too large to cache.
+     *
+     * @param upstreamEtag ETag sent by the gateway, used to revalidate; {@code null} if it sent none
+     * @param etag         ETag served to the browser (the upstream one, or a hash of the body)
+     */
+    public record CachedResponse(HttpHeaders headers, byte[] body, String upstreamEtag, String etag, Instant freshUntil) {
+
+        public static CachedResponse tooLarge(Instant freshUntil) {
+            return new CachedResponse(HttpHeaders.EMPTY, null, null, null, freshUntil);
+        }
+
+        public boolean isTooLarge() {
+            return body == null;
+        }
+
+        public boolean isFresh(Instant now) {
+            return now.isBefore(freshUntil);
+        }
+
+        public CachedResponse withFreshUntil(Instant freshUntil) {
+            return new CachedResponse(headers, body, upstreamEtag, etag, freshUntil);
+        }
+
+        int weight() {
+            return body != null ? Math.max(1, body.length) : 1;
+        }
+    }
+}
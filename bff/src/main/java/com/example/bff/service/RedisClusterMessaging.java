@@ -0,0 +1,30 @@
+package com.example.bff.service;
+
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * {@link ClusterMessaging} over Redis pub/sub, shared by all BFF instances using the same Redis.
+ */
+public class RedisClusterMessaging implements ClusterMessaging {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    public RedisClusterMessaging(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @Override
+    public void publish(String channel, String message) {
+        stringRedisTemplate.convertAndSend(channel, message);
+    }
+
+    @Override
+    public void subscribe(MessageListener listener, String channel) {
+        listenerContainer.addMessageListener(listener, new ChannelTopic(channel));
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.bff.service;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link SessionExpiryIndex} in a Redis sorted set ({@value #KEY}), maintained by {@link RedisSessionStore}.
+ * <p>
+ * Member is the session jti, score the access token's {@code expires_at} in epoch milliseconds.
+ * Claiming atomically pushes the claimed members' score forward, so concurrent schedulers on other
+ * BFF replicas skip them; a successful refresh then re-indexes the session with its new expiry.
+ */
+public class RedisSessionExpiryIndex implements SessionExpiryIndex {
+
+    static final String KEY = "bff:session:access-expiry";
+    private static final byte[] KEY_BYTES = bytes(KEY);
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CLAIM_DUE = new DefaultRedisScript<>("""
+            local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+            for _, member in ipairs(due) do
+              redis.call('ZADD', KEYS[1], ARGV[3], member)
+            end
+            return due
+            """, List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public RedisSessionExpiryIndex(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * Indexes the session by access-token expiry, on the caller's (usually pipelined) connection.
+     */
+    public void track(RedisConnection connection, String jti, OAuth2AuthorizedClient client) {
+        Long score = SessionExpiryIndex.score(client);
+        if (score == null) {
+            remove(connection, jti);
+            return;
+        }
+        connection.zSetCommands().zAdd(KEY_BYTES, score, bytes(jti));
+    }
+
+    @Override
+    public void remove(String jti) {
+        stringRedisTemplate.opsForZSet().remove(KEY, jti);
+    }
+
+    /**
+     * Same as {@link #remove(String)}, on a caller's (pipelined) connection.
+     */
+    public void remove(RedisConnection connection, String jti) {
+        connection.zSetCommands().zRem(KEY_BYTES, bytes(jti));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> claimDue(Instant horizon, int batchSize, Duration claimTtl) {
+        List<String> due = stringRedisTemplate.execute(CLAIM_DUE, List.of(KEY),
+                String.valueOf(horizon.toEpochMilli()),
+                String.valueOf(batchSize),
+                String.valueOf(Instant.now().plus(claimTtl).toEpochMilli()));
+        return due != null ? due : List.of();
+    }
+
+    @Override
+    public Instant earliestExpiry() {
+        Set<ZSetOperations.TypedTuple<String>> first = stringRedisTemplate.opsForZSet().rangeWithScores(KEY, 0, 0);
+        if (first == null || first.isEmpty()) {
+            return null;
+        }
+        Double score = first.iterator().next().getScore();
+        return score != null ? Instant.ofEpochMilli(score.longValue()) : null;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
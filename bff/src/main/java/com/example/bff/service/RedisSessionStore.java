@@ -0,0 +1,203 @@
+package com.example.bff.service;
+
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Redis {@link SessionStore}, shared by all BFF instances.
+ * <p>
+ * Each session is a single hash {@code bff:session:<jti>} with the fields
+ * <ul>
+ *   <li>{@code client} - the {@link OAuth2AuthorizedClient} in {@link SessionCodec} format</li>
+ *   <li>{@code id_token} - the OIDC ID token, used as {@code id_token_hint} at logout</li>
+ *   <li>{@code created_at} - login time in epoch milliseconds</li>
+ * </ul>
+ * Login and refresh write the hash and its expiry in one Lua script, together with the
+ * {@link RedisSessionExpiryIndex} update, so every write is atomic and costs one round trip.
+ * <p>
+ * Sessions written by older BFF versions as two plain keys ({@code <jti>} and {@code <jti>:id_token})
+ * are still read and deleted; they disappear on their own within one session TTL.
+ */
+public class RedisSessionStore implements SessionStore {
+
+    static final String KEY_PREFIX = "bff:session:";
+    private static final byte[] FIELD_CLIENT = bytes("client");
+    private static final byte[] FIELD_ID_TOKEN = bytes("id_token");
+
+    /**
+     * KEYS[1] session hash; ARGV: client, created_at, ttl ms, id token ('' if none).
+     */
+    private static final byte[] CREATE = bytes("""
+            redis.call('DEL', KEYS[1])
+            redis.call('HSET', KEYS[1], 'client', ARGV[1], 'created_at', ARGV[2])
+            if ARGV[4] ~= '' then
+              redis.call('HSET', KEYS[1], 'id_token', ARGV[4])
+            end
+            redis.call('PEXPIRE', KEYS[1], ARGV[3])
+            return 1
+            """);
+
+    /**
+     * KEYS[1] session hash, KEYS[2] expiry index; ARGV: client, ttl ms, jti, index score ('' to unindex).
+     * Keeps the remaining TTL. A session deleted meanwhile (logout racing a refresh) is not
+     * recreated: the script only drops it from the index and returns 0.
+     */
+    private static final byte[] UPDATE = bytes("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+              redis.call('ZREM', KEYS[2], ARGV[3])
+              return 0
+            end
+            redis.call('HSET', KEYS[1], 'client', ARGV[1])
+            if redis.call('PTTL', KEYS[1]) < 0 then
+              redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            end
+            if ARGV[4] == '' then
+              redis.call('ZREM', KEYS[2], ARGV[3])
+            else
+              redis.call('ZADD', KEYS[2], ARGV[4], ARGV[3])
+            end
+            return 1
+            """);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final SessionCodec sessionCodec;
+    private final RedisSessionExpiryIndex expiryIndex;
+
+    public RedisSessionStore(RedisTemplate<String, Object> redisTemplate,
+                             SessionCodec sessionCodec,
+                             RedisSessionExpiryIndex expiryIndex) {
+        this.redisTemplate = redisTemplate;
+        this.sessionCodec = sessionCodec;
+        this.expiryIndex = expiryIndex;
+    }
+
+    @Override
+    public void create(String jti, OAuth2AuthorizedClient client, String idToken, Duration ttl) {
+        byte[] key = key(jti);
+        byte[] value = sessionCodec.serialize(client);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.scriptingCommands().eval(CREATE, ReturnType.INTEGER, 1, key, value,
+                    bytes(String.valueOf(Instant.now().toEpochMilli())),
+                    bytes(String.valueOf(ttl.toMillis())),
+                    bytes(idToken != null ? idToken : ""));
+            expiryIndex.track(connection, jti, client);
+            return null;
+        });
+    }
+
+    /**
+     * Session hash and expiry index are updated in one script, so a concurrent delete can neither
+     * be undone nor leave the session indexed for background refresh.
+     */
+    @Override
+    public boolean update(String jti, OAuth2AuthorizedClient client, Duration ttl) {
+        byte[] value = sessionCodec.serialize(client);
+        Long score = SessionExpiryIndex.score(client);
+        Long updated = redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.scriptingCommands().eval(UPDATE, ReturnType.INTEGER, 2, key(jti), bytes(RedisSessionExpiryIndex.KEY),
+                        value,
+                        bytes(String.valueOf(ttl.toMillis())),
+                        bytes(jti),
+                        bytes(score != null ? String.valueOf(score) : "")));
+        return updated != null && updated == 1L;
+    }
+
+    @Override
+    public OAuth2AuthorizedClient load(String jti) {
+        byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.hashCommands().hGet(key(jti), FIELD_CLIENT));
+        return value != null
+                ? (OAuth2AuthorizedClient) sessionCodec.deserialize(value)
+                : (OAuth2AuthorizedClient) redisTemplate.opsForValue().get(jti);
+    }
+
+    /**
+     * Loads the session's tokens together with its remaining TTL in one round trip.
+     * Sessions in the layout of older BFF versions are not returned.
+     *
+     * @return the session, or {@code null} if there is no session hash
+     */
+    Expiring loadExpiring(String jti) {
+        byte[] key = key(jti);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hGet(key, FIELD_CLIENT);
+            connection.keyCommands().pTtl(key);
+            return null;
+        }, RedisSerializer.byteArray());
+        if (!(results.get(0) instanceof byte[] value) || !(results.get(1) instanceof Long ttlMillis) || ttlMillis <= 0) {
+            return null;
+        }
+        return new Expiring((OAuth2AuthorizedClient) sessionCodec.deserialize(value), Duration.ofMillis(ttlMillis));
+    }
+
+    @Override
+    public String loadIdToken(String jti) {
+        byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.hashCommands().hGet(key(jti), FIELD_ID_TOKEN));
+        return value != null
+                ? new String(value, StandardCharsets.UTF_8)
+                : (String) redisTemplate.opsForValue().get(jti + ":id_token");
+    }
+
+    /**
+     * A plain {@code PEXPIRE}: the hash is not rewritten.
+     */
+    @Override
+    public boolean touch(String jti, Duration ttl) {
+        Boolean extended = redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.keyCommands().pExpire(key(jti), ttl.toMillis()));
+        return Boolean.TRUE.equals(extended);
+    }
+
+    /**
+     * Deletes the session in one pipelined round trip.
+     */
+    @Override
+    public void delete(String jti) {
+        deleteAll(List.of(jti));
+    }
+
+    /**
+     * Deletes all the sessions in one pipelined round trip, however many there are.
+     */
+    @Override
+    public void deleteAll(Collection<String> jtis) {
+        if (jtis.isEmpty()) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String jti : jtis) {
+                connection.keyCommands().del(key(jti));
+                // Layout of older BFF versions
+                for (String legacy : List.of(jti, jti + ":id_token")) {
+                    connection.keyCommands().del(bytes(legacy));
+                }
+                expiryIndex.remove(connection, jti);
+            }
+            return null;
+        });
+    }
+
+    private static byte[] key(String jti) {
+        return bytes(KEY_PREFIX + jti);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A session's tokens and remaining TTL.
+     */
+    record Expiring(OAuth2AuthorizedClient client, Duration ttl) {
+    }
+}
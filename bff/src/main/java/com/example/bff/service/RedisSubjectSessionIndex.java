@@ -0,0 +1,81 @@
+package com.example.bff.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * {@link SubjectSessionIndex} in a Redis sorted set per subject ({@value #KEY_PREFIX}{@code <subject>}),
+ * shared by all BFF instances.
+ * <p>
+ * Each session is scored by the latest time it can still be alive, its login plus
+ * {@code bff.session.max-lifetime-minutes}. Every login first drops the entries past that time, so
+ * the set only holds sessions that may still exist however often the user logs in, and the set
+ * itself expires with its newest session.
+ */
+@Slf4j
+public class RedisSubjectSessionIndex implements SubjectSessionIndex {
+
+    static final String KEY_PREFIX = "bff:session:by-subject:";
+
+    /**
+     * KEYS[1] index; ARGV: jti, now ms, max lifetime ms.
+     */
+    private static final RedisScript<Long> TRACK = new DefaultRedisScript<>("""
+            redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[2])
+            redis.call('ZADD', KEYS[1], tonumber(ARGV[2]) + tonumber(ARGV[3]), ARGV[1])
+            return redis.call('PEXPIRE', KEYS[1], ARGV[3])
+            """, Long.class);
+
+    /**
+     * KEYS[1] index; ARGV: now ms.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> DRAIN = new DefaultRedisScript<>("""
+            local members = redis.call('ZRANGEBYSCORE', KEYS[1], ARGV[1], '+inf')
+            redis.call('DEL', KEYS[1])
+            return members
+            """, List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Duration maxLifetime;
+
+    public RedisSubjectSessionIndex(StringRedisTemplate stringRedisTemplate, Duration maxLifetime) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.maxLifetime = maxLifetime;
+    }
+
+    /**
+     * Best effort: a login must not fail because the index is unavailable. An unindexed session is
+     * still rejected by the subject's revocation epoch, it is only not deleted from the store.
+     */
+    @Override
+    public void track(String subject, String jti) {
+        try {
+            stringRedisTemplate.execute(TRACK, List.of(KEY_PREFIX + subject), jti,
+                    String.valueOf(System.currentTimeMillis()), String.valueOf(maxLifetime.toMillis()));
+        } catch (Exception e) {
+            log.warn("Failed to index session by subject: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * None if Redis is unavailable.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> drain(String subject) {
+        try {
+            List<String> sessions = stringRedisTemplate.execute(DRAIN, List.of(KEY_PREFIX + subject),
+                    String.valueOf(System.currentTimeMillis()));
+            return sessions != null ? sessions : List.of();
+        } catch (Exception e) {
+            log.warn("Failed to read sessions by subject: {}", e.getMessage());
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.bff.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for identical gateway GETs.
+ * <p>
+ * Two requests are identical when they would send the same upstream request: same URI and same
+ * outgoing headers, including the session's bearer token, so responses are never shared across
+ * sessions. While one such request waits for the gateway, later ones join it instead of calling
+ * the gateway themselves. When the response headers arrive the flight is closed; requests arriving
+ * after that start a new one. There is no caching beyond the single in-flight call.
+ * <p>
+ * A flight without joiners streams exactly as before. With joiners the body is read into memory
+ * once and handed to every waiter. Bodies above {@code bff.proxy.coalescing.max-bytes} are not
+ * shared: the joiners then send their own request (GETs are safe to repeat). A joiner also sends its
+ * own request once it has waited {@code bff.proxy.coalescing.join-timeout-ms} for the flight, so a
+ * stuck leader does not hold its followers for longer than their own call would take.
+ * <p>
+ * Metrics: {@code bff.proxy.coalescing.requests{outcome=upstream|shared|fallback}} - requests that
+ * called the gateway, joined a flight and were answered by it, or joined but had to call themselves.
+ */
+@Component
+public class RequestCoalescer {
+
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final int maxBytes;
+    private final long joinTimeoutMillis;
+    private final Counter upstream;
+    private final Counter shared;
+    private final Counter fallback;
+
+    public RequestCoalescer(MeterRegistry meterRegistry,
+                            @Value("${bff.proxy.coalescing.enabled:true}") boolean enabled,
+                            @Value("${bff.proxy.coalescing.max-bytes:1048576}") int maxBytes,
+                            @Value("${bff.proxy.coalescing.join-timeout-ms:5000}") long joinTimeoutMs) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.joinTimeoutMillis = joinTimeoutMs;
+        this.upstream = requests(meterRegistry, "upstream");
+        this.shared = requests(meterRegistry, "shared");
+        this.fallback = requests(meterRegistry, "fallback");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Opens the upstream response for {@code key}, or waits for the identical call already in flight.
+     *
+     * @param call opens the upstream response (status and headers received, body not yet consumed)
+     */
+    public ResponseEntity<Flux<DataBuffer>> execute(String key, Supplier<ResponseEntity<Flux<DataBuffer>>> call) {
+        Flight flight = new Flight();
+        Flight existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return join(existing, call);
+        }
+
+        ResponseEntity<Flux<DataBuffer>> response;
+        try {
+            response = call.get();
+        } catch (RuntimeException e) {
+            inFlight.remove(key, flight);
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            upstream.increment();
+        }
+        inFlight.remove(key, flight);
+
+        if (flight.waiters.get() == 0 || response.getHeaders().getContentLength() > maxBytes) {
+            flight.result.complete(null);
+            return response;
+        }
+        byte[] body;
+        try {
+            body = read(response.getBody());
+        } catch (DataBufferLimitException e) {
+            // Chunked body larger than max-bytes and already partly read: everyone fetches again
+            flight.result.complete(null);
+            return call.get();
+        } catch (RuntimeException e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+        SharedResponse result = new SharedResponse(response.getStatusCode(),
+                HttpHeaders.readOnlyHttpHeaders(response.getHeaders()), body);
+        flight.result.complete(result);
+        return result.toEntity();
+    }
+
+    private ResponseEntity<Flux<DataBuffer>> join(Flight flight, Supplier<ResponseEntity<Flux<DataBuffer>>> call) {
+        flight.waiters.incrementAndGet();
+        SharedResponse result;
+        try {
+            result = flight.result.get(joinTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // The flight is not cancelled: the leader and the other joiners still get its response
+            result = null;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a coalesced gateway call", e);
+        }
+        if (result == null) {
+            fallback.increment();
+            return call.get();
+        }
+        shared.increment();
+        return result.toEntity();
+    }
+
+    private byte[] read(Flux<DataBuffer> body) {
+        DataBuffer joined = body != null ? DataBufferUtils.join(body, maxBytes).block() : null;
+        if (joined == null) {
+            return new byte[0];
+        }
+        try {
+            byte[] bytes = new byte[joined.readableByteCount()];
+            joined.read(bytes);
+            return bytes;
+        } finally {
+            DataBufferUtils.release(joined);
+        }
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("bff.proxy.coalescing.requests")
+                .description("Gateway GETs by single-flight outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static final class Flight {
+
+        private final AtomicInteger waiters = new AtomicInteger();
+        /**
+         * The shared response, or {@code null} if the waiters have to call the gateway themselves.
+         */
+        private final CompletableFuture<SharedResponse> result = new CompletableFuture<>();
+    }
+
+    private record SharedResponse(HttpStatusCode status, HttpHeaders headers, byte[] body) {
+
+        ResponseEntity<Flux<DataBuffer>> toEntity() {
+            Flux<DataBuffer> buffer = Flux.defer(() -> Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(body)));
+            return new ResponseEntity<>(buffer, headers, status);
+        }
+    }
+}
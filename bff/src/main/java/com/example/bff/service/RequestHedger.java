@@ -0,0 +1,212 @@
+package com.example.bff.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Hedged gateway GETs: if the first attempt has not answered in time, a second one is sent and
+ * whichever answers first is used; the other attempt is cancelled, or its response released if it
+ * answered as well.
+ * <p>
+ * Only GETs to the gateway path prefixes in {@code bff.proxy.hedge.paths} are hedged. Each prefix is
+ * a route with its own latency distribution; the hedge is sent once an attempt has been running for
+ * the route's observed {@code bff.proxy.hedge.percentile} (at least {@code min-delay-ms}), so only
+ * the slow tail is duplicated. Until a route has latency data nothing is hedged.
+ * <p>
+ * Extra load is capped by a budget: every request earns {@code bff.proxy.hedge.budget-percent}
+ * percent of a hedge, and a hedge is only sent while a whole one has been earned (a burst of at most
+ * {@value #MAX_BURST} is saved up). A slow gateway therefore gets a few percent more requests, not twice as many.
+ * <p>
+ * Metrics (tagged by {@code route}):
+ * <ul>
+ *   <li>{@code bff.proxy.hedge.latency} - time to the response headers of first attempts, with the
+ *       hedge percentile</li>
+ *   <li>{@code bff.proxy.hedges{outcome=sent|won|denied}} - hedges sent, hedges that answered first,
+ *       and hedges skipped for lack of budget</li>
+ * </ul>
+ */
+@Component
+public class RequestHedger {
+
+    private static final int MAX_BURST = 10;
+    private static final long THRESHOLD_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final List<Route> routes = new ArrayList<>();
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long budgetPercent;
+
+    public RequestHedger(MeterRegistry meterRegistry,
+                         @Value("${bff.proxy.hedge.enabled:false}") boolean enabled,
+                         @Value("${bff.proxy.hedge.paths:/profile}") List<String> paths,
+                         @Value("${bff.proxy.hedge.percentile:0.95}") double percentile,
+                         @Value("${bff.proxy.hedge.min-delay-ms:10}") long minDelayMs,
+                         @Value("${bff.proxy.hedge.budget-percent:5}") long budgetPercent) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMs);
+        this.budgetPercent = budgetPercent;
+        if (enabled) {
+            for (String path : paths) {
+                routes.add(new Route(path, percentile, meterRegistry));
+            }
+        }
+    }
+
+    /**
+     * Like {@link #hedge(HttpMethod, String, Supplier, Consumer)}, for responses that hold no
+     * resources once emitted (e.g. fully read bodies).
+     */
+    public <T> Mono<T> hedge(HttpMethod method, String path, Supplier<Mono<T>> attempt) {
+        return hedge(method, path, attempt, response -> { });
+    }
+
+    /**
+     * Subscribes to {@code attempt} and, for hedged routes, to a second one if the first is slow.
+     * <p>
+     * Only the first attempt's latency is recorded: hedge wins would hide the slow tail the hedge
+     * delay is derived from. A first attempt cancelled because the hedge answered is recorded too,
+     * as at least the hedge delay; leaving it out would drop exactly the slowest requests.
+     *
+     * @param attempt creates a new, independent attempt of the same call each time it is invoked
+     * @param discard releases a response that lost the race, e.g. by draining its body
+     */
+    public <T> Mono<T> hedge(HttpMethod method, String path, Supplier<Mono<T>> attempt, Consumer<T> discard) {
+        Route route = enabled && HttpMethod.GET.equals(method) ? route(path) : null;
+        if (route == null) {
+            return attempt.get();
+        }
+        route.earn(budgetPercent);
+        long delayNanos = route.delayNanos(percentile, minDelayNanos);
+        long start = System.nanoTime();
+        Mono<T> first = attempt.get()
+                .doOnNext(response -> route.record(start, 0))
+                .doOnCancel(() -> route.record(start, delayNanos));
+        if (delayNanos <= 0) {
+            return first;
+        }
+
+        // Both attempts can answer before the loser is cancelled; only one may pass
+        AtomicBoolean answered = new AtomicBoolean();
+        Mono<T> second = Mono.delay(Duration.ofNanos(delayNanos))
+                .filter(tick -> route.spend())
+                .flatMap(tick -> claim(attempt.get(), answered, discard))
+                .doOnNext(response -> route.won.increment())
+                // A failed hedge must not fail a first attempt that may still answer
+                .onErrorResume(e -> Mono.never())
+                .switchIfEmpty(Mono.never());
+        return Mono.firstWithSignal(claim(first, answered, discard), second);
+    }
+
+    /**
+     * Passes the response on if no other attempt answered yet, otherwise releases it and stays silent.
+     */
+    private static <T> Mono<T> claim(Mono<T> attempt, AtomicBoolean answered, Consumer<T> discard) {
+        return attempt.flatMap(response -> {
+            if (answered.compareAndSet(false, true)) {
+                return Mono.just(response);
+            }
+            discard.accept(response);
+            return Mono.never();
+        });
+    }
+
+    private Route route(String path) {
+        for (Route route : routes) {
+            if (path.startsWith(route.prefix)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    private static final class Route {
+
+        private final String prefix;
+        private final Timer latency;
+        private final Counter sent;
+        private final Counter won;
+        private final Counter denied;
+        /**
+         * Hedge budget in hundredths of a hedge.
+         */
+        private final AtomicLong budget = new AtomicLong();
+        private volatile long thresholdNanos;
+        private volatile long thresholdRefreshAt = System.nanoTime();
+
+        Route(String prefix, double percentile, MeterRegistry meterRegistry) {
+            this.prefix = prefix;
+            this.latency = Timer.builder("bff.proxy.hedge.latency")
+                    .description("Time to the gateway response headers on hedged routes")
+                    .tag("route", prefix)
+                    .publishPercentiles(percentile)
+                    .register(meterRegistry);
+            this.sent = hedges(meterRegistry, prefix, "sent");
+            this.won = hedges(meterRegistry, prefix, "won");
+            this.denied = hedges(meterRegistry, prefix, "denied");
+        }
+
+        void earn(long hundredths) {
+            budget.accumulateAndGet(hundredths, (current, add) -> Math.min(current + add, MAX_BURST * 100L));
+        }
+
+        boolean spend() {
+            long current;
+            do {
+                current = budget.get();
+                if (current < 100) {
+                    denied.increment();
+                    return false;
+                }
+            } while (!budget.compareAndSet(current, current - 100));
+            sent.increment();
+            return true;
+        }
+
+        /**
+         * Hedge delay from the route's latency percentile, re-read at most once per second once known; 0 without data.
+         */
+        long delayNanos(double percentile, long minDelayNanos) {
+            long now = System.nanoTime();
+            if (thresholdNanos == 0 || now - thresholdRefreshAt >= 0) {
+                thresholdRefreshAt = now + THRESHOLD_REFRESH_NANOS;
+                long observed = 0;
+                for (ValueAtPercentile value : latency.takeSnapshot().percentileValues()) {
+                    if (value.percentile() == percentile) {
+                        observed = (long) value.value(TimeUnit.NANOSECONDS);
+                    }
+                }
+                thresholdNanos = observed > 0 ? Math.max(observed, minDelayNanos) : 0;
+            }
+            return thresholdNanos;
+        }
+
+        void record(long startNanos, long minNanos) {
+            latency.record(Math.max(System.nanoTime() - startNanos, minNanos), TimeUnit.NANOSECONDS);
+        }
+
+        private static Counter hedges(MeterRegistry meterRegistry, String route, String outcome) {
+            return Counter.builder("bff.proxy.hedges")
+                    .description("Hedged gateway requests by outcome")
+                    .tag("route", route)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+    }
+}
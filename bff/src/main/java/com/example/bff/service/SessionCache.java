@@ -0,0 +1,160 @@
+package com.example.bff.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * In-process L1 cache of {@link OAuth2AuthorizedClient} sessions in front of Redis.
+ * <p>
+ * A busy page fires many parallel {@code /bff/api/**} calls for the same session; with this cache
+ * only the first one pays the Redis GET and deserialization; the others wait for its result. Entries
+ * are bounded by size and by a short TTL ({@code bff.session.l1.*}).
+ * <p>
+ * An invalidation that arrives while a session is being loaded waits for the load and then drops
+ * its result, so tokens read before a refresh or logout cannot repopulate the cache after it.
+ * <p>
+ * <b>Cross-node invalidation:</b> whenever a session is refreshed or deleted, the owning node
+ * publishes the jti on {@value #INVALIDATION_CHANNEL} ({@link ClusterMessaging}). Every other BFF
+ * instance drops its local copy, so the next request reloads the current tokens from the session
+ * store. Messages carry the publishing
+ * node id so a node ignores its own invalidations. Revoking all sessions of a user drops them with
+ * a single message listing their comma-separated jtis.
+ * <p>
+ * Hit/miss/eviction counts are exported as {@code cache.*{cache="bff.session.l1"}} and
+ * invalidations as {@code bff.session.l1.invalidations}.
+ */
+@Component
+@Slf4j
+public class SessionCache implements MessageListener {
+
+    static final String INVALIDATION_CHANNEL = "bff:session:invalidate";
+    private static final String CACHE_NAME = "bff.session.l1";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ClusterMessaging messaging;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, OAuth2AuthorizedClient> cache;
+
+    private Counter localInvalidations;
+    private Counter remoteInvalidations;
+
+    public SessionCache(ClusterMessaging messaging,
+                        MeterRegistry meterRegistry,
+                        @Value("${bff.session.l1.max-size:10000}") long maxSize,
+                        @Value("${bff.session.l1.ttl-seconds:30}") long ttlSeconds) {
+        this.messaging = messaging;
+        this.meterRegistry = meterRegistry;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    @PostConstruct
+    void init() {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        localInvalidations = Counter.builder(CACHE_NAME + ".invalidations")
+                .description("Sessions dropped from the L1 cache because they changed")
+                .tag("source", "local")
+                .register(meterRegistry);
+        remoteInvalidations = Counter.builder(CACHE_NAME + ".invalidations")
+                .description("Sessions dropped from the L1 cache because they changed")
+                .tag("source", "remote")
+                .register(meterRegistry);
+        messaging.subscribe(this, INVALIDATION_CHANNEL);
+    }
+
+    /**
+     * Returns the cached session, or loads it once for all concurrent callers.
+     *
+     * @param loader reads the session from the store; a {@code null} result is not cached
+     */
+    public OAuth2AuthorizedClient get(String jti, Function<String, OAuth2AuthorizedClient> loader) {
+        return cache.get(jti, loader);
+    }
+
+    public void put(String jti, OAuth2AuthorizedClient client) {
+        cache.put(jti, client);
+    }
+
+    /**
+     * Prefix of the invalidations this node publishes, for other listeners on the same channel.
+     */
+    String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Drops only this node's copy, forcing the next load to read Redis.
+     */
+    public void evictLocal(String jti) {
+        cache.invalidate(jti);
+    }
+
+    /**
+     * Drops the local copy and tells the other BFF instances to do the same.
+     */
+    public void invalidate(String jti) {
+        cache.invalidate(jti);
+        localInvalidations.increment();
+        try {
+            messaging.publish(INVALIDATION_CHANNEL, nodeId + ":" + jti);
+        } catch (Exception e) {
+            // Other nodes still converge once their L1 TTL expires
+            log.warn("Failed to publish session invalidation: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Drops several sessions everywhere with one message, whatever their number.
+     */
+    public void invalidateAll(Collection<String> jtis) {
+        if (jtis.isEmpty()) {
+            return;
+        }
+        cache.invalidateAll(jtis);
+        localInvalidations.increment(jtis.size());
+        try {
+            messaging.publish(INVALIDATION_CHANNEL, nodeId + ":" + String.join(",", jtis));
+        } catch (Exception e) {
+            log.warn("Failed to publish session invalidation: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(':');
+        if (separator < 0 || body.substring(0, separator).equals(nodeId)) {
+            return;
+        }
+        List<String> jtis = jtis(body.substring(separator + 1));
+        cache.invalidateAll(jtis);
+        remoteInvalidations.increment(jtis.size());
+    }
+
+    /**
+     * Session ids of an invalidation message: one jti, or several separated by commas.
+     */
+    static List<String> jtis(String payload) {
+        return List.of(payload.split(","));
+    }
+}
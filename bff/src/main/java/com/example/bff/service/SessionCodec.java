@@ -0,0 +1,200 @@
+package com.example.bff.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Compact binary Redis value format for BFF sessions.
+ * <p>
+ * JDK serialization of an {@link OAuth2AuthorizedClient} drags the whole {@link ClientRegistration}
+ * graph into every session entry. This codec only stores what differs per user (registration id,
+ * principal name, token values, scopes and timestamps) and rehydrates the registration from the
+ * local {@link ClientRegistrationRepository} on read.
+ * <p>
+ * Layout (all values big-endian, strings as int length + UTF-8 bytes):
+ * <pre>
+ * magic(0xBF) version(1) type
+ *   type 1 = authorized client:
+ *     registrationId principalName
+ *     accessToken issuedAt expiresAt scopeCount scope*
+ *     hasRefreshToken [refreshToken issuedAt expiresAt]
+ *   type 2 = string
+ * </pre>
+ * Timestamps are epoch milliseconds, {@code -1} when absent. Access tokens are always rehydrated as
+ * {@code Bearer}.
+ * <p>
+ * <b>Rollout:</b> values starting with the JDK serialization stream magic ({@code 0xACED}) are still
+ * read through {@link JdkSerializationRedisSerializer}, so sessions written before the upgrade stay
+ * valid. Set {@code bff.session.codec.write-format=jdk} while old and new BFF versions run side by
+ * side, then switch to {@code compact} once every instance can read the new format.
+ */
+@Component
+@Slf4j
+public class SessionCodec implements RedisSerializer<Object> {
+
+    private static final byte MAGIC = (byte) 0xBF;
+    private static final byte VERSION = 1;
+    private static final byte TYPE_AUTHORIZED_CLIENT = 1;
+    private static final byte TYPE_STRING = 2;
+    private static final long ABSENT = -1L;
+
+    private final ClientRegistrationRepository clientRegistrationRepository;
+    private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+    private final boolean writeCompact;
+
+    public SessionCodec(ClientRegistrationRepository clientRegistrationRepository,
+                        @Value("${bff.session.codec.write-format:compact}") String writeFormat) {
+        this.clientRegistrationRepository = clientRegistrationRepository;
+        this.writeCompact = !"jdk".equalsIgnoreCase(writeFormat);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        if (!writeCompact || !(value instanceof OAuth2AuthorizedClient || value instanceof String)) {
+            return jdkSerializer.serialize(value);
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+
+            if (value instanceof String string) {
+                out.writeByte(TYPE_STRING);
+                writeString(out, string);
+            } else {
+                out.writeByte(TYPE_AUTHORIZED_CLIENT);
+                writeClient(out, (OAuth2AuthorizedClient) value);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Failed to encode session value", e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            // Legacy entry written with JdkSerializationRedisSerializer
+            return jdkSerializer.deserialize(bytes);
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            in.readByte();
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new SerializationException("Unsupported session codec version " + version);
+            }
+
+            byte type = in.readByte();
+            return switch (type) {
+                case TYPE_STRING -> readString(in);
+                case TYPE_AUTHORIZED_CLIENT -> readClient(in);
+                default -> throw new SerializationException("Unknown session value type " + type);
+            };
+        } catch (IOException e) {
+            throw new SerializationException("Failed to decode session value", e);
+        }
+    }
+
+    private void writeClient(DataOutputStream out, OAuth2AuthorizedClient client) throws IOException {
+        writeString(out, client.getClientRegistration().getRegistrationId());
+        writeString(out, client.getPrincipalName());
+
+        OAuth2AccessToken accessToken = client.getAccessToken();
+        writeString(out, accessToken.getTokenValue());
+        writeInstant(out, accessToken.getIssuedAt());
+        writeInstant(out, accessToken.getExpiresAt());
+        out.writeShort(accessToken.getScopes().size());
+        for (String scope : accessToken.getScopes()) {
+            writeString(out, scope);
+        }
+
+        OAuth2RefreshToken refreshToken = client.getRefreshToken();
+        out.writeBoolean(refreshToken != null);
+        if (refreshToken != null) {
+            writeString(out, refreshToken.getTokenValue());
+            writeInstant(out, refreshToken.getIssuedAt());
+            writeInstant(out, refreshToken.getExpiresAt());
+        }
+    }
+
+    private OAuth2AuthorizedClient readClient(DataInputStream in) throws IOException {
+        String registrationId = readString(in);
+        String principalName = readString(in);
+
+        String accessTokenValue = readString(in);
+        Instant accessIssuedAt = readInstant(in);
+        Instant accessExpiresAt = readInstant(in);
+        int scopeCount = in.readUnsignedShort();
+        Set<String> scopes = new LinkedHashSet<>(scopeCount * 2);
+        for (int i = 0; i < scopeCount; i++) {
+            scopes.add(readString(in));
+        }
+
+        OAuth2RefreshToken refreshToken = null;
+        if (in.readBoolean()) {
+            String refreshTokenValue = readString(in);
+            refreshToken = new OAuth2RefreshToken(refreshTokenValue, readInstant(in), readInstant(in));
+        }
+
+        ClientRegistration registration = clientRegistrationRepository.findByRegistrationId(registrationId);
+        if (registration == null) {
+            // Registration removed from configuration: treat the session as gone so the user logs in again
+            log.warn("Discarding session for unknown client registration '{}'", registrationId);
+            return null;
+        }
+
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, accessTokenValue, accessIssuedAt, accessExpiresAt, scopes);
+        return new OAuth2AuthorizedClient(registration, principalName, accessToken, refreshToken);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] encoded = new byte[in.readInt()];
+        in.readFully(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant instant) throws IOException {
+        out.writeLong(instant != null ? instant.toEpochMilli() : ABSENT);
+    }
+
+    private static Instant readInstant(DataInputStream in) throws IOException {
+        long millis = in.readLong();
+        return millis == ABSENT ? null : Instant.ofEpochMilli(millis);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.bff.service;
+
+import com.example.bff.util.VerifiedSessionToken;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+
+import java.time.Instant;
+
+/**
+ * Immutable result of resolving the BFF_SESSION cookie for a single request.
+ * <p>
+ * Produced once per request by {@link SessionContextResolver} and shared by the
+ * {@code TokenRefreshFilter} and the proxy controller, so the cookie is verified and the
+ * session loaded exactly once.
+ *
+ * @param status Outcome of the resolution
+ * @param token  Verified session JWT, {@code null} unless the cookie was valid
+ * @param client OAuth2 tokens loaded from the session store, {@code null} unless resolved
+ */
+public record SessionContext(Status status, VerifiedSessionToken token, OAuth2AuthorizedClient client) {
+
+    /**
+     * Request attribute under which the resolved context is stored.
+     */
+    public static final String REQUEST_ATTRIBUTE = SessionContext.class.getName();
+
+    public enum Status {
+        RESOLVED,
+        MISSING_SESSION,
+        INVALID_SESSION,
+        SESSION_NOT_FOUND
+    }
+
+    static SessionContext failed(Status status, VerifiedSessionToken token) {
+        return new SessionContext(status, token, null);
+    }
+
+    static SessionContext resolved(VerifiedSessionToken token, OAuth2AuthorizedClient client) {
+        return new SessionContext(Status.RESOLVED, token, client);
+    }
+
+    public boolean isResolved() {
+        return status == Status.RESOLVED;
+    }
+
+    public String jti() {
+        return token != null ? token.jti() : null;
+    }
+
+    public String accessToken() {
+        return client.getAccessToken().getTokenValue();
+    }
+
+    /**
+     * Expiry of the access token forwarded to the gateway, {@code null} if unknown.
+     */
+    public Instant accessTokenExpiresAt() {
+        return client.getAccessToken().getExpiresAt();
+    }
+
+    /**
+     * Expiry of the BFF session itself (the session JWT).
+     */
+    public Instant sessionExpiresAt() {
+        return token.expiresAt();
+    }
+
+    /**
+     * Whether the tokens can be refreshed: the session store holds a refresh token, or the access
+     * token came from an encrypted cookie and the refresh token is in the store.
+     */
+    public boolean isRefreshable() {
+        return client.getRefreshToken() != null || token.carriesAccessToken();
+    }
+
+    /**
+     * Whether the cookie carries an access token other than the session's current one.
+     */
+    public boolean isCookieStale() {
+        return token.carriesAccessToken() && !token.accessToken().getTokenValue().equals(accessToken());
+    }
+
+    /**
+     * Returns a copy carrying refreshed tokens.
+     */
+    public SessionContext withClient(OAuth2AuthorizedClient refreshed) {
+        return new SessionContext(status, token, refreshed);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.bff.service;
+
+import com.example.bff.util.JwtUtils;
+import com.example.bff.util.VerifiedSessionToken;
+import com.example.common.core.constant.SessionConstants;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * Single resolution stage for the BFF_SESSION cookie.
+ * <p>
+ * Reads the cookie, verifies the session JWT and loads the OAuth2 tokens once per request,
+ * then stores the resulting {@link SessionContext} as a request attribute. Later consumers
+ * (token refresh, proxy controller) get the cached context instead of repeating the work.
+ * <p>
+ * Encrypted session cookies carry the access token; they resolve from the cookie and the
+ * locally cached {@link SessionRevocationList} alone, without a session store lookup. Sessions of
+ * users whose sessions were all revoked are rejected from the same local list before any lookup.
+ * <p>
+ * Per-stage durations are recorded as {@code bff.session.resolve{stage=verify|load|refresh}}.
+ */
+@Component
+public class SessionContextResolver {
+
+    private final JwtUtils jwtUtils;
+    private final SessionRedisService sessionService;
+    private final SessionRevocationList revocationList;
+    private final ClientRegistrationRepository clientRegistrationRepository;
+    private final Timer verifyTimer;
+    private final Timer loadTimer;
+    private final Timer refreshTimer;
+
+    public SessionContextResolver(JwtUtils jwtUtils,
+                                  SessionRedisService sessionService,
+                                  SessionRevocationList revocationList,
+                                  ClientRegistrationRepository clientRegistrationRepository,
+                                  MeterRegistry meterRegistry) {
+        this.jwtUtils = jwtUtils;
+        this.sessionService = sessionService;
+        this.revocationList = revocationList;
+        this.clientRegistrationRepository = clientRegistrationRepository;
+        this.verifyTimer = stageTimer(meterRegistry, "verify");
+        this.loadTimer = stageTimer(meterRegistry, "load");
+        this.refreshTimer = stageTimer(meterRegistry, "refresh");
+    }
+
+    /**
+     * Returns the session context for this request, resolving it on first access.
+     */
+    public SessionContext resolve(HttpServletRequest request) {
+        if (request.getAttribute(SessionContext.REQUEST_ATTRIBUTE) instanceof SessionContext context) {
+            return context;
+        }
+        SessionContext context = doResolve(request);
+        request.setAttribute(SessionContext.REQUEST_ATTRIBUTE, context);
+        return context;
+    }
+
+    /**
+     * Replaces the request's context, e.g. after the tokens were refreshed.
+     */
+    public void update(HttpServletRequest request, SessionContext context) {
+        request.setAttribute(SessionContext.REQUEST_ATTRIBUTE, context);
+    }
+
+    /**
+     * Timer for the token refresh stage, recorded by the refresh logic.
+     */
+    public Timer refreshTimer() {
+        return refreshTimer;
+    }
+
+    private SessionContext doResolve(HttpServletRequest request) {
+        Cookie cookie = WebUtils.getCookie(request, SessionConstants.COOKIE_BFF_SESSION);
+        if (cookie == null || cookie.getValue().isEmpty()) {
+            return SessionContext.failed(SessionContext.Status.MISSING_SESSION, null);
+        }
+
+        VerifiedSessionToken token = verifyTimer.record(() -> jwtUtils.verify(cookie.getValue()));
+        if (token == null || token.jti() == null) {
+            return SessionContext.failed(SessionContext.Status.INVALID_SESSION, null);
+        }
+
+        if (revocationList.isRevoked(token)) {
+            return SessionContext.failed(SessionContext.Status.SESSION_NOT_FOUND, token);
+        }
+
+        if (token.carriesAccessToken()) {
+            ClientRegistration registration = clientRegistrationRepository.findByRegistrationId(token.registrationId());
+            if (registration != null) {
+                return SessionContext.resolved(token, new OAuth2AuthorizedClient(registration, token.subject(), token.accessToken()));
+            }
+        }
+
+        OAuth2AuthorizedClient client = loadTimer.record(() -> sessionService.load(token.jti()));
+        if (client == null) {
+            return SessionContext.failed(SessionContext.Status.SESSION_NOT_FOUND, token);
+        }
+
+        return SessionContext.resolved(token, client);
+    }
+
+    private static Timer stageTimer(MeterRegistry meterRegistry, String stage) {
+        return Timer.builder("bff.session.resolve")
+                .description("Time spent resolving the BFF session per request stage")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.bff.service;
+
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Sessions ordered by access-token expiry, maintained by the {@link SessionStore}.
+ * <p>
+ * The background refresh scheduler claims due sessions from this index instead of scanning the
+ * store. Implementations, selected with {@code bff.session.store}:
+ * <ul>
+ *   <li>{@code redis}, {@code hybrid} - {@link RedisSessionExpiryIndex}, fed by {@link RedisSessionStore}</li>
+ *   <li>{@code local} - {@link LocalSessionExpiryIndex}, fed by {@link OffHeapSessionStore}</li>
+ * </ul>
+ */
+public interface SessionExpiryIndex {
+
+    /**
+     * Claims up to {@code batchSize} sessions whose access token expires before {@code horizon}.
+     * Claimed sessions become due again after {@code claimTtl} unless they are re-indexed earlier.
+     */
+    List<String> claimDue(Instant horizon, int batchSize, Duration claimTtl);
+
+    /**
+     * Earliest access-token expiry in the index, or {@code null} if the index is empty.
+     */
+    Instant earliestExpiry();
+
+    void remove(String jti);
+
+    /**
+     * Index score of the session: access-token expiry in epoch milliseconds, or {@code null} if
+     * there is nothing to refresh ahead of time.
+     */
+    static Long score(OAuth2AuthorizedClient client) {
+        Instant expiresAt = client.getAccessToken().getExpiresAt();
+        if (client.getRefreshToken() == null || expiresAt == null) {
+            return null;
+        }
+        return expiresAt.toEpochMilli();
+    }
+}
@@ -1,42 +1,118 @@
 package com.example.bff.service;
 
-import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.List;
 
+/**
+ * Session storage facade used by the controller, the session resolver and token refresh.
+ * <p>
+ * Sessions live in the configured {@link SessionStore} ({@code bff.session.store}, Redis by
+ * default); this service fronts it with the per-node {@link SessionCache} and keeps that cache
+ * consistent across BFF instances when a session is refreshed or deleted. Sessions are also indexed
+ * by subject ({@link SubjectSessionIndex}) so that all sessions of a user can be revoked at once.
+ */
 @Service
-@RequiredArgsConstructor
 public class SessionRedisService {
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final SessionStore sessionStore;
+    private final SessionCache sessionCache;
+    private final SubjectSessionIndex subjectIndex;
+    private final SessionRevocationList revocationList;
+    private final Duration sessionTtl;
 
-    @Value("${bff.session.ttl-minutes}")
-    private int sessionTtlMinutes;
+    public SessionRedisService(SessionStore sessionStore,
+                               SessionCache sessionCache,
+                               SubjectSessionIndex subjectIndex,
+                               SessionRevocationList revocationList,
+                               @Value("${bff.session.ttl-minutes}") int sessionTtlMinutes) {
+        this.sessionStore = sessionStore;
+        this.sessionCache = sessionCache;
+        this.subjectIndex = subjectIndex;
+        this.revocationList = revocationList;
+        this.sessionTtl = Duration.ofMinutes(sessionTtlMinutes);
+    }
+
+    /**
+     * Creates the session at login: tokens, ID token and metadata in one atomic write.
+     *
+     * @param idToken OIDC ID token, or {@code null}
+     */
+    public void create(String jti, OAuth2AuthorizedClient client, String idToken) {
+        sessionStore.create(jti, client, idToken, sessionTtl);
+        sessionCache.put(jti, client);
+        subjectIndex.track(client.getPrincipalName(), jti);
+    }
 
-    public void save(String jti, OAuth2AuthorizedClient client) {
-        // In a real app, you would encrypt the token here
-        redisTemplate.opsForValue().set(jti, client, Duration.ofMinutes(sessionTtlMinutes));
+    /**
+     * Updates the session's tokens (refresh).
+     * <p>
+     * The remaining TTL is kept, so refreshing tokens - in particular from the background
+     * scheduler - never outlives the BFF_SESSION JWT it belongs to. A session that was deleted
+     * meanwhile (logout or revocation racing the refresh) stays deleted.
+     *
+     * @return {@code false} if the session no longer exists
+     */
+    public boolean save(String jti, OAuth2AuthorizedClient client) {
+        boolean updated = sessionStore.update(jti, client, sessionTtl);
+        // Other nodes may hold the previous tokens; drop them everywhere before caching the new ones
+        sessionCache.invalidate(jti);
+        if (updated) {
+            sessionCache.put(jti, client);
+        }
+        return updated;
     }
 
-    public void saveIdToken(String jti, String idToken) {
-        redisTemplate.opsForValue().set(jti + ":id_token", idToken, Duration.ofMinutes(sessionTtlMinutes));
+    /**
+     * Extends the session's TTL (sliding expiration) without rewriting it.
+     *
+     * @return {@code false} if the session no longer exists
+     */
+    public boolean touch(String jti, Duration ttl) {
+        return sessionStore.touch(jti, ttl);
     }
 
     public OAuth2AuthorizedClient load(String jti) {
-        // In a real app, you would decrypt here
-        return (OAuth2AuthorizedClient) redisTemplate.opsForValue().get(jti);
+        return sessionCache.get(jti, sessionStore::load);
+    }
+
+    /**
+     * Loads the session straight from the store, bypassing this node's L1 copy.
+     * Used where another BFF instance may have just updated the session.
+     */
+    public OAuth2AuthorizedClient reload(String jti) {
+        sessionCache.evictLocal(jti);
+        return load(jti);
     }
 
     public String loadIdToken(String jti) {
-        return (String) redisTemplate.opsForValue().get(jti + ":id_token");
+        return sessionStore.loadIdToken(jti);
     }
 
+    /**
+     * Deletes the session (logout).
+     */
     public void delete(String jti) {
-        redisTemplate.delete(jti);
-        redisTemplate.delete(jti + ":id_token");
+        sessionStore.delete(jti);
+        sessionCache.invalidate(jti);
+    }
+
+    /**
+     * Revokes every session of the subject ("log out everywhere", user deleted).
+     * <p>
+     * The subject's revocation epoch rejects all its sessions on every node immediately; deleting
+     * the stored sessions afterwards only stops their background token refresh and frees the store.
+     * The round trips do not grow with the number of sessions: one store delete and one cache
+     * invalidation cover all of them. The same epoch ends the subject's Spring Security logins
+     * ({@code JSESSIONID}) through {@link com.example.bff.filter.RevokedLoginFilter}.
+     */
+    public void revokeAll(String subject) {
+        revocationList.revokeSubject(subject);
+        List<String> jtis = subjectIndex.drain(subject);
+        sessionStore.deleteAll(jtis);
+        sessionCache.invalidateAll(jtis);
     }
 }
@@ -0,0 +1,179 @@
+package com.example.bff.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Refreshes session tokens in the background, ahead of the request-path refresh buffer.
+ * <p>
+ * Each tick claims up to {@code batch-size} sessions from the {@link SessionExpiryIndex} whose
+ * access token expires within {@code lead-seconds} and refreshes them on a small worker pool.
+ * Because sessions are picked by expiry and the batch size caps refreshes per tick, Keycloak
+ * sees a steady trickle of refresh grants rather than bursts tied to user traffic. The inline
+ * refresh in {@code TokenRefreshFilter} only kicks in if the scheduler falls behind.
+ * <p>
+ * Safe on multiple replicas: claiming is atomic in Redis (or in this node's index with the local
+ * session store), and the refresh itself goes through
+ * {@link TokenRefreshService}'s per-session lease.
+ * <p>
+ * Metrics:
+ * <ul>
+ *   <li>{@code bff.token.refresh.scheduler.lag} - seconds the most overdue session is past its refresh time</li>
+ *   <li>{@code bff.token.refresh.scheduler.sessions{result=refreshed|skipped|failed}} - throughput</li>
+ *   <li>{@code bff.token.refresh.scheduler.tick} - duration of each tick</li>
+ * </ul>
+ */
+@Component
+@ConditionalOnProperty(name = "bff.token.refresh.scheduler.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class SessionRefreshScheduler {
+
+    private final SessionExpiryIndex expiryIndex;
+    private final SessionRedisService sessionService;
+    private final TokenRefreshService tokenRefreshService;
+    private final long leadSeconds;
+    private final int batchSize;
+    private final Duration claimTtl;
+    private final ExecutorService workers;
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private final Counter refreshed;
+    private final Counter skipped;
+    private final Counter failed;
+    private final Timer tickTimer;
+
+    public SessionRefreshScheduler(SessionExpiryIndex expiryIndex,
+                                   SessionRedisService sessionService,
+                                   TokenRefreshService tokenRefreshService,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${bff.token.refresh.scheduler.lead-seconds:120}") long leadSeconds,
+                                   @Value("${bff.token.refresh.scheduler.batch-size:50}") int batchSize,
+                                   @Value("${bff.token.refresh.scheduler.concurrency:4}") int concurrency,
+                                   @Value("${bff.token.refresh.scheduler.claim-ttl-seconds:30}") long claimTtlSeconds) {
+        this.expiryIndex = expiryIndex;
+        this.sessionService = sessionService;
+        this.tokenRefreshService = tokenRefreshService;
+        this.leadSeconds = leadSeconds;
+        this.batchSize = batchSize;
+        this.claimTtl = Duration.ofSeconds(claimTtlSeconds);
+        this.workers = Executors.newFixedThreadPool(concurrency);
+
+        Gauge.builder("bff.token.refresh.scheduler.lag", lagSeconds, AtomicLong::get)
+                .description("Seconds the most overdue session is past its scheduled refresh time")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.refreshed = sessionCounter(meterRegistry, "refreshed");
+        this.skipped = sessionCounter(meterRegistry, "skipped");
+        this.failed = sessionCounter(meterRegistry, "failed");
+        this.tickTimer = Timer.builder("bff.token.refresh.scheduler.tick")
+                .description("Duration of a background refresh tick")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${bff.token.refresh.scheduler.interval-ms:1000}")
+    public void tick() {
+        tickTimer.record(() -> {
+            try {
+                refreshDue();
+            } catch (Exception e) {
+                log.warn("Background token refresh tick failed: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Claims one batch of due sessions and refreshes them.
+     *
+     * @return number of sessions refreshed
+     */
+    public int refreshDue() throws InterruptedException {
+        Instant now = Instant.now();
+        updateLag(now);
+
+        List<String> due = expiryIndex.claimDue(now.plusSeconds(leadSeconds), batchSize, claimTtl);
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        List<Callable<Boolean>> tasks = new ArrayList<>(due.size());
+        for (String jti : due) {
+            tasks.add(() -> refreshOne(jti));
+        }
+
+        int count = 0;
+        for (var result : workers.invokeAll(tasks)) {
+            try {
+                if (Boolean.TRUE.equals(result.get())) {
+                    count++;
+                }
+            } catch (Exception e) {
+                // Already counted in refreshOne
+            }
+        }
+        return count;
+    }
+
+    private boolean refreshOne(String jti) {
+        try {
+            if (sessionService.reload(jti) == null) {
+                // Session expired or logged out: drop it from the index
+                expiryIndex.remove(jti);
+                skipped.increment();
+                return false;
+            }
+
+            OAuth2AuthorizedClient result = tokenRefreshService.refresh(jti, leadSeconds);
+            if (result == null) {
+                // Backoff or another node is refreshing; the claim expires and the session is retried.
+                // A session deleted during the refresh was already dropped from the index by the store.
+                skipped.increment();
+                return false;
+            }
+            refreshed.increment();
+            return true;
+        } catch (Exception e) {
+            log.debug("Background refresh failed for session: {}", e.getMessage());
+            failed.increment();
+            return false;
+        }
+    }
+
+    private void updateLag(Instant now) {
+        Instant earliest = expiryIndex.earliestExpiry();
+        if (earliest == null) {
+            lagSeconds.set(0);
+            return;
+        }
+        Instant dueAt = earliest.minusSeconds(leadSeconds);
+        lagSeconds.set(Math.max(0, Duration.between(dueAt, now).toSeconds()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private static Counter sessionCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("bff.token.refresh.scheduler.sessions")
+                .description("Sessions processed by the background refresh scheduler")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.bff.service;
+
+import com.example.bff.util.VerifiedSessionToken;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Revoked sessions whose cookies are still valid on their own, and users whose sessions were all revoked.
+ * <p>
+ * Encrypted session cookies carry the access token and are accepted without reading the session
+ * store, so deleting a session at logout does not stop a copy of its cookie. Logout therefore adds
+ * the jti here for one {@code bff.session.ttl-minutes}, after which every cookie ever issued for the
+ * session has expired (reissued cookies never get more than one TTL):
+ * <ul>
+ *   <li>in Redis, as a sorted set {@value #KEY} scored by that expiry, the source of truth;</li>
+ *   <li>in every BFF instance's memory, pushed on {@value #CHANNEL} and re-synced every
+ *       {@code bff.session.revocation.sync-interval-ms} in case a message was missed.</li>
+ * </ul>
+ * {@link #isRevoked(String)} is a local map lookup and never touches Redis. The list is only
+ * maintained while {@code bff.session.encrypted.enabled} is set.
+ * <p>
+ * Revoking all sessions of a user ("log out everywhere", user deleted by an admin) records a
+ * revocation epoch for the subject instead of listing its sessions: every session of the subject
+ * that logged in before the epoch is revoked, whatever store or cookie format it uses. The epoch is
+ * a single entry in the sorted set {@value #SUBJECTS_KEY}, pushed on {@value #SUBJECTS_CHANNEL} and
+ * synced like the jti list, and kept for {@code bff.session.max-lifetime-minutes}, after which no
+ * session from before it can still be alive. Checking it is again a local map lookup.
+ * <p>
+ * A BFF without Redis ({@code bff.session.store=local}) holds its sessions alone; the in-memory maps
+ * are then the whole list, and nothing is written to or synced from Redis.
+ */
+@Component
+@Slf4j
+public class SessionRevocationList implements MessageListener {
+
+    static final String KEY = "bff:session:revoked";
+    static final String CHANNEL = "bff:session:revoked";
+    static final String SUBJECTS_KEY = "bff:session:revoked-subjects";
+    static final String SUBJECTS_CHANNEL = "bff:session:revoked-subjects";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ClusterMessaging messaging;
+    private final MeterRegistry meterRegistry;
+    private final boolean shared;
+    private final boolean enabled;
+    private final Duration sessionTtl;
+    private final Duration maxLifetime;
+    private final Map<String, Long> revokedUntil = new ConcurrentHashMap<>();
+    private final Map<String, Long> subjectsRevokedAt = new ConcurrentHashMap<>();
+
+    public SessionRevocationList(StringRedisTemplate stringRedisTemplate,
+                                 ClusterMessaging messaging,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${bff.session.store:redis}") String store,
+                                 @Value("${bff.session.encrypted.enabled:false}") boolean enabled,
+                                 @Value("${bff.session.ttl-minutes}") int sessionTtlMinutes,
+                                 @Value("${bff.session.max-lifetime-minutes:720}") int maxLifetimeMinutes) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.messaging = messaging;
+        this.meterRegistry = meterRegistry;
+        this.shared = !"local".equals(store);
+        this.enabled = enabled;
+        this.sessionTtl = Duration.ofMinutes(sessionTtlMinutes);
+        this.maxLifetime = Duration.ofMinutes(maxLifetimeMinutes);
+    }
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("bff.session.revoked-subjects", subjectsRevokedAt, Map::size)
+                .description("Users with a session revocation epoch, held in memory")
+                .register(meterRegistry);
+        messaging.subscribe(this, SUBJECTS_CHANNEL);
+        if (enabled) {
+            Gauge.builder("bff.session.revoked", revokedUntil, Map::size)
+                    .description("Revoked sessions with still valid cookies, held in memory")
+                    .register(meterRegistry);
+            messaging.subscribe(this, CHANNEL);
+        }
+        sync();
+    }
+
+    /**
+     * Revokes all cookies of the session.
+     */
+    public void revoke(String jti) {
+        if (!enabled) {
+            return;
+        }
+        long untilMillis = Instant.now().plus(sessionTtl).toEpochMilli();
+        revokedUntil.put(jti, untilMillis);
+        if (!shared) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForZSet().add(KEY, jti, untilMillis);
+            messaging.publish(CHANNEL, jti + ":" + untilMillis);
+        } catch (Exception e) {
+            // Revoked on this node only; others pick it up with the next successful revocation sync
+            log.warn("Failed to publish session revocation: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Revokes every session of the subject that logged in until now: one Redis write, whatever the
+     * number of sessions.
+     */
+    public void revokeSubject(String subject) {
+        long epochMillis = System.currentTimeMillis();
+        subjectsRevokedAt.merge(subject, epochMillis, Math::max);
+        if (!shared) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForZSet().add(SUBJECTS_KEY, subject, epochMillis);
+            messaging.publish(SUBJECTS_CHANNEL, subject + ":" + epochMillis);
+        } catch (Exception e) {
+            log.warn("Failed to publish subject revocation: {}", e.getMessage());
+        }
+    }
+
+    public boolean isRevoked(String jti) {
+        Long until = revokedUntil.get(jti);
+        return until != null && until > System.currentTimeMillis();
+    }
+
+    /**
+     * Whether the session was revoked on its own or together with all sessions of its subject.
+     */
+    public boolean isRevoked(VerifiedSessionToken token) {
+        return isRevoked(token.jti()) || isSubjectRevoked(token.subject(), token.authTimeMillis());
+    }
+
+    /**
+     * Whether a login of the subject at the given time was revoked together with all its sessions.
+     *
+     * @param authTimeMillis login time in epoch milliseconds, {@code null} if unknown
+     */
+    public boolean isSubjectRevoked(String subject, Long authTimeMillis) {
+        Long epochMillis = subject != null ? subjectsRevokedAt.get(subject) : null;
+        if (epochMillis == null) {
+            return false;
+        }
+        // Without a recorded login time the session cannot be shown to postdate the revocation
+        return authTimeMillis == null || authTimeMillis < epochMillis;
+    }
+
+    /**
+     * Reloads the list from Redis and drops entries whose cookies have expired.
+     */
+    @Scheduled(fixedDelayString = "${bff.session.revocation.sync-interval-ms:5000}")
+    public void sync() {
+        syncSubjects();
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        revokedUntil.values().removeIf(until -> until <= now);
+        if (!shared) {
+            return;
+        }
+        try {
+            ZSetOperations<String, String> zSet = stringRedisTemplate.opsForZSet();
+            zSet.removeRangeByScore(KEY, 0, now);
+            Set<ZSetOperations.TypedTuple<String>> revoked = zSet.rangeByScoreWithScores(KEY, now, Double.POSITIVE_INFINITY);
+            if (revoked != null) {
+                for (ZSetOperations.TypedTuple<String> entry : revoked) {
+                    if (entry.getValue() != null && entry.getScore() != null) {
+                        revokedUntil.put(entry.getValue(), entry.getScore().longValue());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to sync session revocations: {}", e.getMessage());
+        }
+    }
+
+    private void syncSubjects() {
+        long horizon = System.currentTimeMillis() - maxLifetime.toMillis();
+        subjectsRevokedAt.values().removeIf(epoch -> epoch <= horizon);
+        if (!shared) {
+            return;
+        }
+        try {
+            ZSetOperations<String, String> zSet = stringRedisTemplate.opsForZSet();
+            zSet.removeRangeByScore(SUBJECTS_KEY, 0, horizon);
+            Set<ZSetOperations.TypedTuple<String>> revoked = zSet.rangeByScoreWithScores(SUBJECTS_KEY, horizon, Double.POSITIVE_INFINITY);
+            if (revoked != null) {
+                for (ZSetOperations.TypedTuple<String> entry : revoked) {
+                    if (entry.getValue() != null && entry.getScore() != null) {
+                        subjectsRevokedAt.merge(entry.getValue(), entry.getScore().longValue(), Math::max);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to sync subject revocations: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        boolean subject = SUBJECTS_CHANNEL.equals(new String(message.getChannel(), StandardCharsets.UTF_8));
+        int separator = body.lastIndexOf(':');
+        if (separator > 0) {
+            try {
+                long value = Long.parseLong(body.substring(separator + 1));
+                if (subject) {
+                    subjectsRevokedAt.merge(body.substring(0, separator), value, Math::max);
+                } else {
+                    revokedUntil.put(body.substring(0, separator), value);
+                }
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring malformed revocation message: {}", body);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.bff.service;
+
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * Storage of BFF sessions behind {@link SessionRedisService}.
+ * <p>
+ * Implementations, selected with {@code bff.session.store}:
+ * <ul>
+ *   <li>{@code redis} (default) - {@link RedisSessionStore}, shared by all BFF instances</li>
+ *   <li>{@code local} - {@link OffHeapSessionStore}, in this process only, no Redis round trip</li>
+ *   <li>{@code hybrid} - {@link HybridSessionStore}, writes through to Redis and reads locally</li>
+ * </ul>
+ * Stores hold sessions until their TTL runs out; the L1 cache in {@link SessionRedisService} sits in front of all of them.
+ */
+public interface SessionStore {
+
+    /**
+     * Creates the session at login, replacing any previous session with the same jti.
+     *
+     * @param idToken OIDC ID token, or {@code null}
+     */
+    void create(String jti, OAuth2AuthorizedClient client, String idToken, Duration ttl);
+
+    /**
+     * Replaces the session's tokens and keeps its remaining TTL. A session that no longer exists
+     * (logged out or revoked while its tokens were being refreshed) is not recreated.
+     *
+     * @param ttl TTL for a session that exists without one
+     * @return {@code false} if the session no longer exists
+     */
+    boolean update(String jti, OAuth2AuthorizedClient client, Duration ttl);
+
+    /**
+     * @return the session's tokens, or {@code null} if the session does not exist or expired
+     */
+    OAuth2AuthorizedClient load(String jti);
+
+    /**
+     * @return the session's OIDC ID token, or {@code null}
+     */
+    String loadIdToken(String jti);
+
+    /**
+     * Sets the session's remaining TTL.
+     *
+     * @return {@code false} if the session no longer exists
+     */
+    boolean touch(String jti, Duration ttl);
+
+    void delete(String jti);
+
+    /**
+     * Deletes several sessions at once (all sessions of a user). Stores with a network round trip
+     * per call override this to delete them in one.
+     */
+    default void deleteAll(Collection<String> jtis) {
+        jtis.forEach(this::delete);
+    }
+}
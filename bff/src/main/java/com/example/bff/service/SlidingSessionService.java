@@ -0,0 +1,158 @@
+package com.example.bff.service;
+
+import com.example.bff.util.JwtUtils;
+import com.example.bff.util.VerifiedSessionToken;
+import com.example.common.core.constant.SessionConstants;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Sliding expiration of BFF sessions.
+ * <p>
+ * A session is only extended once it is past {@code bff.session.sliding.threshold} of its current
+ * lifetime (e.g. after 15 of 30 minutes), so a chatty client causes one extension per half
+ * lifetime instead of one write per request. An extension
+ * <ul>
+ *   <li>moves the Redis TTL of the session hash ({@code PEXPIRE}, the hash itself is not rewritten) and</li>
+ *   <li>reissues the BFF_SESSION cookie with a new {@code exp}.</li>
+ * </ul>
+ * The new cookie is kept per session for {@code bff.session.sliding.reissue-cache-seconds}, so the
+ * requests a browser still sends with the old cookie reuse it instead of signing again and touching
+ * Redis again. Sessions never live longer than {@code bff.session.max-lifetime-minutes} after login.
+ * <p>
+ * Encrypted cookies (see {@link JwtUtils}) carry the access token, so they are also reissued -
+ * without extending the session - once the session's tokens were refreshed.
+ * <p>
+ * Metric: {@code bff.session.touches{outcome=extended|reissued|reused|capped|missing}}.
+ */
+@Service
+@Slf4j
+public class SlidingSessionService {
+
+    private final JwtUtils jwtUtils;
+    private final SessionRedisService sessionService;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final double threshold;
+    private final Duration sessionTtl;
+    private final Duration maxLifetime;
+    private final boolean cookieSecure;
+    private final Cache<String, Reissued> reissued;
+
+    public SlidingSessionService(JwtUtils jwtUtils,
+                                 SessionRedisService sessionService,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${bff.session.sliding.enabled:true}") boolean enabled,
+                                 @Value("${bff.session.sliding.threshold:0.5}") double threshold,
+                                 @Value("${bff.session.sliding.reissue-cache-seconds:30}") long reissueCacheSeconds,
+                                 @Value("${bff.session.ttl-minutes}") int sessionTtlMinutes,
+                                 @Value("${bff.session.max-lifetime-minutes:720}") int maxLifetimeMinutes,
+                                 @Value("${bff.cookie.secure}") boolean cookieSecure) {
+        this.jwtUtils = jwtUtils;
+        this.sessionService = sessionService;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.sessionTtl = Duration.ofMinutes(sessionTtlMinutes);
+        this.maxLifetime = Duration.ofMinutes(maxLifetimeMinutes);
+        this.cookieSecure = cookieSecure;
+        this.reissued = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofSeconds(reissueCacheSeconds))
+                .build();
+    }
+
+    /**
+     * Extends the resolved session if it is past the threshold, reissues an encrypted cookie that
+     * carries an outdated access token, and adds the new cookie to the response.
+     */
+    public void touch(SessionContext context, HttpServletResponse response) {
+        if (!context.isResolved() || context.token().issuedAt() == null) {
+            return;
+        }
+        VerifiedSessionToken token = context.token();
+        Instant now = Instant.now();
+        Duration lifetime = Duration.between(token.issuedAt(), token.expiresAt());
+        Duration elapsed = Duration.between(token.issuedAt(), now);
+        boolean due = enabled && elapsed.toMillis() >= lifetime.toMillis() * threshold;
+        boolean stale = context.isCookieStale();
+        if (!due && !stale) {
+            return;
+        }
+
+        Reissued cookie = reissued.getIfPresent(token.jti());
+        if (cookie != null && cookie.matches(token, context, due)) {
+            record("reused");
+            response.addHeader(HttpHeaders.SET_COOKIE, cookie.value());
+            return;
+        }
+
+        Instant expiresAt = token.expiresAt();
+        String outcome = "reissued";
+        if (due) {
+            Instant cap = token.authTime().plus(maxLifetime);
+            Instant extended = now.plus(sessionTtl).isBefore(cap) ? now.plus(sessionTtl) : cap;
+            if (!extended.isAfter(token.expiresAt())) {
+                record("capped");
+                if (!stale) {
+                    return;
+                }
+            } else if (!sessionService.touch(token.jti(), Duration.between(now, extended))) {
+                record("missing");
+                return;
+            } else {
+                expiresAt = extended;
+                outcome = "extended";
+            }
+        }
+
+        String value = sessionCookie(jwtUtils.reissueSessionJwt(token, expiresAt, context.client())).toString();
+        reissued.put(token.jti(), new Reissued(value, expiresAt, context.accessToken()));
+        record(outcome);
+        log.debug("Reissued session cookie {} until {} ({})", token.jti(), expiresAt, outcome);
+        response.addHeader(HttpHeaders.SET_COOKIE, value);
+    }
+
+    /**
+     * The BFF_SESSION cookie carrying the given session JWT.
+     */
+    public ResponseCookie sessionCookie(String sessionJwt) {
+        return ResponseCookie.from(SessionConstants.COOKIE_BFF_SESSION, sessionJwt)
+                .httpOnly(true)
+                .secure(cookieSecure)
+                .sameSite("Lax")
+                .path("/")
+                .build();
+    }
+
+    private void record(String outcome) {
+        Counter.builder("bff.session.touches")
+                .description("Sliding expiration checks of sessions past the touch threshold")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private record Reissued(String value, Instant expiresAt, String accessToken) {
+
+        /**
+         * Whether this cookie can stand in for the request's: it extends the session if an extension
+         * is due, and carries the current access token if the request's cookie carries one at all.
+         */
+        boolean matches(VerifiedSessionToken token, SessionContext context, boolean due) {
+            boolean expiry = due ? expiresAt.isAfter(token.expiresAt()) : !expiresAt.isBefore(token.expiresAt());
+            return expiry && (!token.carriesAccessToken() || accessToken.equals(context.accessToken()));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.bff.service;
+
+import com.example.bff.service.ProxyResponseCache.CachedResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Last-known-good copies of proxied GET responses, served while the gateway is failing.
+ * <p>
+ * Every 200 that {@link CachingProxyService} receives for a route listed in
+ * {@code bff.proxy.stale.windows} is kept per session (body as received, possibly compressed) for
+ * that route's stale window, independently of the short-lived {@link ProxyResponseCache} entries.
+ * Copies are not dropped after writes: they are only served when the alternative is an error.
+ * <p>
+ * A copy is served instead of the upstream response when the gateway call fails, answers with a
+ * 5xx, or has not answered within {@code bff.proxy.stale.deadline-ms} (the deadline only applies
+ * while a copy exists), and when the call is shed by the BFF's own concurrency limits. Stale
+ * responses carry {@code Warning: 110}, {@code Age} and {@value #STALE_HEADER}.
+ * <p>
+ * Metrics:
+ * <ul>
+ *   <li>{@code bff.proxy.stale.requests{outcome=served|missing}} - failed cacheable GETs answered
+ *       from a copy, or failing for lack of one</li>
+ *   <li>{@code cache.*{cache="bff.proxy.stale"}} - size and evictions</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class StaleResponseStore {
+
+    public static final String STALE_HEADER = "X-Bff-Stale";
+    static final String CACHE_NAME = "bff.proxy.stale";
+
+    private final Cache<Key, StaleCopy> copies;
+    private final Map<String, Duration> windows = new LinkedHashMap<>();
+    private final Duration deadline;
+    private final Counter served;
+    private final Counter missing;
+
+    public StaleResponseStore(MeterRegistry meterRegistry,
+                              @Value("${bff.proxy.stale.enabled:false}") boolean enabled,
+                              @Value("${bff.proxy.stale.windows:/profile=3600}") List<String> windows,
+                              @Value("${bff.proxy.stale.max-bytes:16777216}") long maxBytes,
+                              @Value("${bff.proxy.stale.deadline-ms:3000}") long deadlineMs) {
+        if (enabled) {
+            for (String window : windows) {
+                int separator = window.lastIndexOf('=');
+                if (separator <= 0) {
+                    log.warn("Ignoring stale window '{}': expected <path prefix>=<seconds>", window);
+                    continue;
+                }
+                this.windows.put(window.substring(0, separator).trim(),
+                        Duration.ofSeconds(Long.parseLong(window.substring(separator + 1).trim())));
+            }
+        }
+        this.deadline = Duration.ofMillis(deadlineMs);
+        this.copies = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, StaleCopy copy) -> copy.response().weight())
+                .expireAfter(new Expiry<Key, StaleCopy>() {
+                    @Override
+                    public long expireAfterCreate(Key key, StaleCopy copy, long currentTime) {
+                        return copy.window().toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, StaleCopy copy, long currentTime, long currentDuration) {
+                        return copy.window().toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, StaleCopy copy, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, copies, CACHE_NAME);
+        this.served = requests(meterRegistry, "served");
+        this.missing = requests(meterRegistry, "missing");
+    }
+
+    /**
+     * Keeps the response as the session's last known good copy, if its route has a stale window.
+     */
+    public void put(String jti, URI targetUri, CachedResponse response) {
+        Duration window = window(targetUri.getPath());
+        if (window != null && !response.isTooLarge()) {
+            copies.put(new Key(jti, targetUri.toString()), new StaleCopy(response, Instant.now(), window));
+        }
+    }
+
+    public boolean isEnabled() {
+        return !windows.isEmpty();
+    }
+
+    public StaleCopy get(String jti, URI targetUri) {
+        return windows.isEmpty() ? null : copies.getIfPresent(new Key(jti, targetUri.toString()));
+    }
+
+    /**
+     * Response timeout for the gateway call: {@code bff.proxy.stale.deadline-ms} while a copy could
+     * be served instead, otherwise {@code null} (the client's default).
+     */
+    public Duration deadline(String jti, URI targetUri) {
+        return get(jti, targetUri) != null ? deadline : null;
+    }
+
+    public void record(boolean servedStale) {
+        (servedStale ? served : missing).increment();
+    }
+
+    private Duration window(String path) {
+        for (Map.Entry<String, Duration> window : windows.entrySet()) {
+            String prefix = window.getKey();
+            if (path.equals(prefix) || path.startsWith(prefix + "/")) {
+                return window.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("bff.proxy.stale.requests")
+                .description("Failed cacheable GETs by whether a last-known-good copy was served")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private record Key(String jti, String uri) {
+    }
+
+    /**
+     * @param storedAt when the response was last received from the gateway
+     * @param window   how long after {@code storedAt} the copy may be served
+     */
+    public record StaleCopy(CachedResponse response, Instant storedAt, Duration window) {
+    }
+}
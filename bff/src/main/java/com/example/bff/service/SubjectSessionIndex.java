@@ -0,0 +1,28 @@
+package com.example.bff.service;
+
+import java.util.List;
+
+/**
+ * Session ids per subject, so that all sessions of a user can be found without scanning the store.
+ * <p>
+ * Implementations, selected with {@code bff.session.store}:
+ * <ul>
+ *   <li>{@code redis}, {@code hybrid} - {@link RedisSubjectSessionIndex}, shared by all BFF instances</li>
+ *   <li>{@code local} - {@link LocalSubjectSessionIndex}, in this process only</li>
+ * </ul>
+ * Entries are kept until {@code bff.session.max-lifetime-minutes} after their login, when the
+ * session cannot exist any more. Logged-out sessions are left to age out the same way; deleting
+ * them again when the user's sessions are revoked is a no-op.
+ */
+public interface SubjectSessionIndex {
+
+    /**
+     * Adds a session at login.
+     */
+    void track(String subject, String jti);
+
+    /**
+     * Removes and returns the subject's session ids in one atomic step.
+     */
+    List<String> drain(String subject);
+}
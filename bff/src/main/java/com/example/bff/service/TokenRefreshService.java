@@ -0,0 +1,315 @@
+package com.example.bff.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes refresh-token grants against Keycloak with per-session coalescing.
+ * <p>
+ * Refresh tokens rotate, so two concurrent refreshes of the same session make the loser's
+ * refresh token invalid. This service makes sure each session is refreshed at most once at a time:
+ * <ul>
+ *   <li><b>Within a node:</b> concurrent callers for the same jti wait for the single in-flight
+ *       refresh and share its result.</li>
+ *   <li><b>Across nodes:</b> a short Redis lease ({@code bff:refresh-lease:<jti>}) elects one BFF
+ *       instance to refresh; the others poll Redis until the refreshed tokens appear. Not used with
+ *       {@code bff.session.store=local}, where no other node holds the session.</li>
+ *   <li><b>Double check:</b> the leader re-reads the session before calling Keycloak, so a caller
+ *       holding stale tokens never replays an already rotated refresh token.</li>
+ *   <li><b>Backoff:</b> failed refreshes put the session into exponential backoff, so a broken
+ *       refresh token does not hit Keycloak on every request.</li>
+ * </ul>
+ * Outcomes are counted in {@code bff.token.refresh{outcome=...}}.
+ */
+@Service
+@Slf4j
+public class TokenRefreshService {
+
+    private static final String LEASE_PREFIX = "bff:refresh-lease:";
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(50);
+    private static final RedisScript<Long> RELEASE_LEASE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final SessionRedisService sessionService;
+    private final WebClient webClient;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long refreshBufferSeconds;
+    private final boolean clusterLeaseEnabled;
+    private final Duration leaseTtl;
+    private final Duration leaseWait;
+    private final Duration backoffBase;
+    private final Duration backoffMax;
+    private final ConcurrentMap<String, CompletableFuture<OAuth2AuthorizedClient>> inFlight = new ConcurrentHashMap<>();
+    private final Cache<String, Backoff> backoffs;
+    private final Counter coalesced;
+    private final Counter backedOff;
+    private final Counter alreadyFresh;
+    private final Counter sessionGone;
+    private final Counter succeeded;
+    private final Counter failed;
+    private final Counter remote;
+    private final Counter remoteTimeout;
+
+    public TokenRefreshService(SessionRedisService sessionService,
+                               WebClient.Builder webClientBuilder,
+                               StringRedisTemplate stringRedisTemplate,
+                               MeterRegistry meterRegistry,
+                               @Value("${bff.token.refresh-buffer-seconds}") long refreshBufferSeconds,
+                               @Value("${bff.session.store:redis}") String store,
+                               @Value("${bff.token.refresh.cluster-lease.enabled:true}") boolean clusterLeaseEnabled,
+                               @Value("${bff.token.refresh.cluster-lease.ttl-ms:10000}") long leaseTtlMs,
+                               @Value("${bff.token.refresh.cluster-lease.wait-ms:3000}") long leaseWaitMs,
+                               @Value("${bff.token.refresh.backoff.initial-seconds:5}") long backoffInitialSeconds,
+                               @Value("${bff.token.refresh.backoff.max-seconds:300}") long backoffMaxSeconds) {
+        this.sessionService = sessionService;
+        // Using Builder allows us to inject a mock/custom builder in tests
+        this.webClient = webClientBuilder.build();
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.refreshBufferSeconds = refreshBufferSeconds;
+        // Sessions of the local store are refreshed by this node only
+        this.clusterLeaseEnabled = clusterLeaseEnabled && !"local".equals(store);
+        this.leaseTtl = Duration.ofMillis(leaseTtlMs);
+        this.leaseWait = Duration.ofMillis(leaseWaitMs);
+        this.backoffBase = Duration.ofSeconds(backoffInitialSeconds);
+        this.backoffMax = Duration.ofSeconds(backoffMaxSeconds);
+        this.backoffs = Caffeine.newBuilder()
+                .expireAfterWrite(backoffMax.multipliedBy(2))
+                .build();
+        this.coalesced = refreshes(meterRegistry, "coalesced");
+        this.backedOff = refreshes(meterRegistry, "backoff");
+        this.alreadyFresh = refreshes(meterRegistry, "already_fresh");
+        this.sessionGone = refreshes(meterRegistry, "session_gone");
+        this.succeeded = refreshes(meterRegistry, "success");
+        this.failed = refreshes(meterRegistry, "failure");
+        this.remote = refreshes(meterRegistry, "remote");
+        this.remoteTimeout = refreshes(meterRegistry, "remote_timeout");
+    }
+
+    /**
+     * Whether the access token is inside the refresh buffer.
+     */
+    public boolean needsRefresh(OAuth2AuthorizedClient client) {
+        return needsRefresh(client, refreshBufferSeconds);
+    }
+
+    private static boolean needsRefresh(OAuth2AuthorizedClient client, long bufferSeconds) {
+        Instant expiresAt = client.getAccessToken().getExpiresAt();
+        return client.getRefreshToken() != null
+                && expiresAt != null
+                && expiresAt.getEpochSecond() - Instant.now().getEpochSecond() < bufferSeconds;
+    }
+
+    /**
+     * Refreshes the session's tokens, coalescing with any refresh already in progress.
+     * The session is re-read before the grant, so callers only pass the jti.
+     *
+     * @return the current tokens (refreshed here, by a concurrent caller or by another node),
+     *         or {@code null} if no fresh tokens could be obtained
+     */
+    public OAuth2AuthorizedClient refresh(String jti) {
+        return refresh(jti, refreshBufferSeconds);
+    }
+
+    /**
+     * Same as {@link #refresh(String)}, but refreshes any token expiring
+     * within {@code bufferSeconds}. Used by the background scheduler to refresh ahead of the
+     * request-path buffer.
+     */
+    public OAuth2AuthorizedClient refresh(String jti, long bufferSeconds) {
+        CompletableFuture<OAuth2AuthorizedClient> mine = new CompletableFuture<>();
+        CompletableFuture<OAuth2AuthorizedClient> existing = inFlight.putIfAbsent(jti, mine);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+
+        try {
+            OAuth2AuthorizedClient result = refreshAsLeader(jti, bufferSeconds);
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            mine.complete(null);
+            throw e;
+        } finally {
+            inFlight.remove(jti, mine);
+        }
+    }
+
+    private OAuth2AuthorizedClient refreshAsLeader(String jti, long bufferSeconds) {
+        Backoff backoff = backoffs.getIfPresent(jti);
+        if (backoff != null && Instant.now().isBefore(backoff.retryAt())) {
+            backedOff.increment();
+            return null;
+        }
+
+        if (clusterLeaseEnabled && !acquireLease(jti)) {
+            return awaitRemoteRefresh(jti, bufferSeconds);
+        }
+
+        try {
+            // Double check: a concurrent caller (here or on another node) may already have refreshed
+            OAuth2AuthorizedClient current = clusterLeaseEnabled ? sessionService.reload(jti) : sessionService.load(jti);
+            if (current == null) {
+                return null;
+            }
+            if (!needsRefresh(current, bufferSeconds)) {
+                alreadyFresh.increment();
+                return current;
+            }
+
+            OAuth2AuthorizedClient refreshed = refreshTokens(current, jti);
+            backoffs.invalidate(jti);
+            if (refreshed == null) {
+                // Logged out or revoked during the grant; the new tokens are dropped with the session
+                sessionGone.increment();
+                return null;
+            }
+            succeeded.increment();
+            return refreshed;
+        } catch (RuntimeException e) {
+            int failures = backoff != null ? backoff.failures() + 1 : 1;
+            backoffs.put(jti, new Backoff(failures, Instant.now().plus(backoffDelay(failures))));
+            failed.increment();
+            throw e;
+        } finally {
+            if (clusterLeaseEnabled) {
+                releaseLease(jti);
+            }
+        }
+    }
+
+    private OAuth2AuthorizedClient refreshTokens(OAuth2AuthorizedClient client, String jti) {
+        Map tokenResponse = webClient.post()
+                .uri(client.getClientRegistration().getProviderDetails().getTokenUri())
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+                .body(BodyInserters.fromFormData("grant_type", "refresh_token")
+                        .with("refresh_token", client.getRefreshToken().getTokenValue())
+                        .with("client_id", client.getClientRegistration().getClientId())
+                        .with("client_secret", client.getClientRegistration().getClientSecret()))
+                .retrieve()
+                .bodyToMono(Map.class)
+                .block();
+
+        if (tokenResponse == null) {
+            throw new IllegalStateException("Empty token response");
+        }
+
+        String newAccessTokenValue = (String) tokenResponse.get("access_token");
+        String newRefreshTokenValue = (String) tokenResponse.get("refresh_token");
+        Integer expiresIn = (Integer) tokenResponse.get("expires_in");
+
+        Instant newExpiresAt = Instant.now().plusSeconds(expiresIn);
+
+        OAuth2AccessToken newAccessToken = new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER,
+                newAccessTokenValue,
+                Instant.now(),
+                newExpiresAt,
+                client.getAccessToken().getScopes());
+
+        OAuth2RefreshToken newRefreshToken = newRefreshTokenValue != null
+                ? new OAuth2RefreshToken(newRefreshTokenValue, Instant.now())
+                : client.getRefreshToken();
+
+        OAuth2AuthorizedClient updatedClient = new OAuth2AuthorizedClient(
+                client.getClientRegistration(),
+                client.getPrincipalName(),
+                newAccessToken,
+                newRefreshToken);
+
+        // Save Updated Tokens to Redis, unless the session was deleted meanwhile
+        return sessionService.save(jti, updatedClient) ? updatedClient : null;
+    }
+
+    /**
+     * Another node holds the lease: wait for its refreshed tokens to show up in Redis.
+     */
+    private OAuth2AuthorizedClient awaitRemoteRefresh(String jti, long bufferSeconds) {
+        Instant deadline = Instant.now().plus(leaseWait);
+        while (Instant.now().isBefore(deadline)) {
+            OAuth2AuthorizedClient current = sessionService.reload(jti);
+            if (current == null) {
+                return null;
+            }
+            if (!needsRefresh(current, bufferSeconds)) {
+                remote.increment();
+                return current;
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        remoteTimeout.increment();
+        return null;
+    }
+
+    private OAuth2AuthorizedClient await(CompletableFuture<OAuth2AuthorizedClient> future) {
+        try {
+            return future.get(leaseWait.toMillis() * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private boolean acquireLease(String jti) {
+        Boolean acquired = stringRedisTemplate.opsForValue().setIfAbsent(LEASE_PREFIX + jti, nodeId, leaseTtl);
+        return Boolean.TRUE.equals(acquired);
+    }
+
+    private void releaseLease(String jti) {
+        try {
+            stringRedisTemplate.execute(RELEASE_LEASE, List.of(LEASE_PREFIX + jti), nodeId);
+        } catch (Exception e) {
+            // The lease expires on its own after bff.token.refresh.cluster-lease.ttl-ms
+            log.warn("Failed to release refresh lease: {}", e.getMessage());
+        }
+    }
+
+    private Duration backoffDelay(int failures) {
+        Duration delay = backoffBase.multipliedBy(1L << Math.min(failures - 1, 16));
+        return delay.compareTo(backoffMax) > 0 ? backoffMax : delay;
+    }
+
+    private static Counter refreshes(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("bff.token.refresh")
+                .description("Proactive token refresh attempts by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private record Backoff(int failures, Instant retryAt) {
+    }
+}
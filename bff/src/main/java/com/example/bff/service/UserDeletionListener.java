@@ -0,0 +1,44 @@
+package com.example.bff.service;
+
+import com.example.common.core.constant.SessionConstants;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Revokes the sessions of users deleted in Keycloak.
+ * <p>
+ * keycloak-admin-service publishes the id of every user it deletes on
+ * {@value SessionConstants#CHANNEL_USER_DELETED}, whether the deletion came from the admin API or
+ * from profile-service. Every BFF instance receives it; revoking a subject twice is harmless, and
+ * only the first instance finds stored sessions left to delete. A BFF without Redis
+ * ({@code bff.session.store=local}) only revokes deletions it proxies itself.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UserDeletionListener implements MessageListener {
+
+    private final SessionRedisService sessionService;
+    private final ClusterMessaging messaging;
+
+    @PostConstruct
+    void init() {
+        messaging.subscribe(this, SessionConstants.CHANNEL_USER_DELETED);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String subject = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (subject.isBlank()) {
+            return;
+        }
+        log.info("Revoking sessions of deleted user {}", subject);
+        sessionService.revokeAll(subject);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.bff.util;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.jca.JCAContext;
+import com.nimbusds.jose.util.Base64URL;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Set;
+
+/**
+ * EdDSA (Ed25519) signer and verifier on the JDK's own provider.
+ * <p>
+ * Nimbus' {@code Ed25519Signer} needs Google Tink on the classpath; the JDK has supported Ed25519
+ * natively since Java 15, so the BFF signs with {@link Signature} directly.
+ */
+final class EdDsaJca {
+
+    private static final String JCA_ALGORITHM = "Ed25519";
+    private static final Set<JWSAlgorithm> ALGORITHMS = Set.of(JWSAlgorithm.EdDSA);
+
+    private EdDsaJca() {
+    }
+
+    static final class Signer implements JWSSigner {
+
+        private final PrivateKey privateKey;
+        private final JCAContext jcaContext = new JCAContext();
+
+        Signer(PrivateKey privateKey) {
+            this.privateKey = privateKey;
+        }
+
+        @Override
+        public Base64URL sign(JWSHeader header, byte[] signingInput) throws JOSEException {
+            try {
+                Signature signature = Signature.getInstance(JCA_ALGORITHM);
+                signature.initSign(privateKey);
+                signature.update(signingInput);
+                return Base64URL.encode(signature.sign());
+            } catch (GeneralSecurityException e) {
+                throw new JOSEException("EdDSA signing failed", e);
+            }
+        }
+
+        @Override
+        public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+            return ALGORITHMS;
+        }
+
+        @Override
+        public JCAContext getJCAContext() {
+            return jcaContext;
+        }
+    }
+
+    static final class Verifier implements JWSVerifier {
+
+        private final PublicKey publicKey;
+        private final JCAContext jcaContext = new JCAContext();
+
+        Verifier(PublicKey publicKey) {
+            this.publicKey = publicKey;
+        }
+
+        @Override
+        public boolean verify(JWSHeader header, byte[] signedContent, Base64URL signature) throws JOSEException {
+            try {
+                Signature verifier = Signature.getInstance(JCA_ALGORITHM);
+                verifier.initVerify(publicKey);
+                verifier.update(signedContent);
+                return verifier.verify(signature.decode());
+            } catch (SignatureException e) {
+                return false;
+            } catch (GeneralSecurityException e) {
+                throw new JOSEException("EdDSA verification failed", e);
+            }
+        }
+
+        @Override
+        public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+            return ALGORITHMS;
+        }
+
+        @Override
+        public JCAContext getJCAContext() {
+            return jcaContext;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.bff.util;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.crypto.DirectDecrypter;
+import com.nimbusds.jose.crypto.DirectEncrypter;
+import com.nimbusds.jose.util.Base64URL;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AES-256 keys for encrypted BFF_SESSION cookies ({@code bff.session.encrypted.enabled}).
+ * <p>
+ * Keys are configured as base64 encoded 32 byte secrets, e.g. {@code openssl rand -base64 32}.
+ * Like {@link SessionKeyRing}, every key gets a {@code kid} (derived from its SHA-256 digest) that is
+ * written into the JWE header, and rotation works the same way: deploy the new key as
+ * {@code bff.jwt.encryption-key}, keep the old one in {@code bff.jwt.retired-encryption-keys}
+ * until {@code bff.session.max-lifetime-minutes} has elapsed.
+ */
+@Component
+@Slf4j
+public class SessionEncryptionKeyRing {
+
+    private final EncryptionKey activeKey;
+    private final Map<String, EncryptionKey> keysById;
+
+    public SessionEncryptionKeyRing(@Value("${bff.jwt.encryption-key:}") String encryptionKey,
+                                    @Value("${bff.jwt.retired-encryption-keys:}") List<String> retiredEncryptionKeys) {
+        Map<String, EncryptionKey> keys = new LinkedHashMap<>();
+        this.activeKey = encryptionKey == null || encryptionKey.isBlank() ? null : parseKey(encryptionKey);
+        if (activeKey != null) {
+            keys.put(activeKey.kid(), activeKey);
+        }
+        for (String retired : retiredEncryptionKeys) {
+            if (retired != null && !retired.isBlank()) {
+                EncryptionKey key = parseKey(retired);
+                keys.putIfAbsent(key.kid(), key);
+            }
+        }
+        this.keysById = Collections.unmodifiableMap(keys);
+
+        if (activeKey != null) {
+            log.info("Loaded BFF session encryption keys: active kid={}, {} decryption key(s)", activeKey.kid(), keysById.size());
+        }
+    }
+
+    /**
+     * Key used to encrypt new session cookies, {@code null} if no encryption key is configured.
+     */
+    public EncryptionKey activeKey() {
+        return activeKey;
+    }
+
+    /**
+     * @return the key for a JWE header {@code kid}, or {@code null} if the kid is unknown
+     */
+    public EncryptionKey decryptionKey(String kid) {
+        return kid != null ? keysById.get(kid) : null;
+    }
+
+    private static EncryptionKey parseKey(String base64) {
+        try {
+            byte[] secret = Base64.getDecoder().decode(base64.trim());
+            if (secret.length != 32) {
+                throw new IllegalArgumentException("A256GCM requires a 256-bit key");
+            }
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(secret);
+            return new EncryptionKey(
+                    Base64URL.encode(digest).toString().substring(0, 16),
+                    new DirectEncrypter(secret),
+                    new DirectDecrypter(secret));
+        } catch (GeneralSecurityException | JOSEException | IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid BFF session encryption key", e);
+        }
+    }
+
+    /**
+     * A parsed encryption key with its pre-built encrypter and decrypter.
+     */
+    public record EncryptionKey(String kid, DirectEncrypter encrypter, DirectDecrypter decrypter) {
+    }
+}
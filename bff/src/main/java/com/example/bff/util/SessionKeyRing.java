@@ -0,0 +1,234 @@
+package com.example.bff.util;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.crypto.MACVerifier;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.util.Base64URL;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Holds the parsed key material used to sign and verify BFF_SESSION JWTs.
+ * <p>
+ * PEM decoding, {@link KeyFactory} work and signer/verifier construction happen once at
+ * startup instead of on every proxied request. Each key is identified by a {@code kid}
+ * derived from its public key, which is written into the JWT header at signing time.
+ * <p>
+ * <b>Algorithms:</b> the signing algorithm follows from the configured key, so switching is a key rotation:
+ * <ul>
+ *   <li>RSA private key - {@code RS256}; a 2048-bit key adds 342 characters of signature to the cookie</li>
+ *   <li>EC P-256 private + public key - {@code ES256}; 86 characters, far cheaper to sign</li>
+ *   <li>Ed25519 private + public key - {@code EdDSA}; 86 characters, the cheapest asymmetric option</li>
+ *   <li>{@code hmac:<base64 secret>} of at least 256 bits - {@code HS256}; 43 characters and the cheapest
+ *       overall. The BFF is the only party issuing and verifying session tokens, so a shared secret suffices</li>
+ * </ul>
+ * EC and Ed25519 keys are configured as the PKCS#8 {@code PRIVATE KEY} block followed by the
+ * {@code PUBLIC KEY} block, e.g. {@code openssl genpkey -algorithm ed25519 -out key.pem && openssl pkey -in key.pem -pubout >> key.pem}.
+ * Verification accepts every key in the ring regardless of algorithm, so a ring can be migrated
+ * from RS256 to another algorithm with the rotation below.
+ * <p>
+ * <b>Zero-downtime rotation:</b>
+ * <ol>
+ *   <li>Deploy the new key as {@code bff.jwt.signing-key} and move the old one to
+ *       {@code bff.jwt.retired-signing-keys}</li>
+ *   <li>New sessions are signed with the new key, existing cookies still verify
+ *       against the retired key via their {@code kid}</li>
+ *   <li>Remove the retired key once {@code bff.session.ttl-minutes} has elapsed</li>
+ * </ol>
+ */
+@Component
+@Slf4j
+public class SessionKeyRing {
+
+    private static final String HMAC_PREFIX = "hmac:";
+
+    private final SessionKey activeKey;
+    private final Map<String, SessionKey> keysById;
+
+    public SessionKeyRing(@Value("${bff.jwt.signing-key}") String signingKey,
+                          @Value("${bff.jwt.retired-signing-keys:}") List<String> retiredSigningKeys) {
+        this.activeKey = parseKey(signingKey);
+
+        Map<String, SessionKey> keys = new LinkedHashMap<>();
+        keys.put(activeKey.kid(), activeKey);
+        for (String retired : retiredSigningKeys) {
+            if (retired != null && !retired.isBlank()) {
+                SessionKey key = parseKey(retired);
+                keys.putIfAbsent(key.kid(), key);
+            }
+        }
+        this.keysById = Collections.unmodifiableMap(keys);
+
+        log.info("Loaded BFF session key ring: active kid={} ({}), {} verification key(s)",
+                activeKey.kid(), activeKey.algorithm(), keysById.size());
+    }
+
+    /**
+     * Key used to sign newly issued session JWTs.
+     */
+    public SessionKey activeKey() {
+        return activeKey;
+    }
+
+    /**
+     * Resolves the verification key for a JWT header {@code kid}.
+     * Tokens issued before key ids were introduced carry no {@code kid} and are checked
+     * against the active key.
+     *
+     * @return the matching key, or {@code null} if the kid is unknown
+     */
+    public SessionKey verificationKey(String kid) {
+        if (kid == null) {
+            return activeKey;
+        }
+        return keysById.get(kid);
+    }
+
+    private static SessionKey parseKey(String material) {
+        try {
+            String value = material.trim();
+            if (value.startsWith(HMAC_PREFIX)) {
+                return hmacKey(Base64.getDecoder().decode(value.substring(HMAC_PREFIX.length()).trim()));
+            }
+
+            byte[] privateDer = pemBlock(value, "PRIVATE KEY");
+            if (privateDer == null) {
+                throw new IllegalArgumentException("No PKCS#8 PRIVATE KEY block");
+            }
+            byte[] publicDer = pemBlock(value, "PUBLIC KEY");
+
+            for (String type : List.of("RSA", "EC", "Ed25519")) {
+                KeyFactory keyFactory = KeyFactory.getInstance(type);
+                PrivateKey privateKey;
+                try {
+                    privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(privateDer));
+                } catch (InvalidKeySpecException e) {
+                    continue; // Not a key of this type
+                }
+                SessionKey key = switch (privateKey) {
+                    case RSAPrivateCrtKey rsa -> rsaKey(keyFactory, rsa);
+                    case ECPrivateKey ec -> ecKey(ec, (ECPublicKey) publicKey(keyFactory, publicDer, "ES256"));
+                    default -> edDsaKey(privateKey, publicKey(keyFactory, publicDer, "EdDSA"));
+                };
+                return checkKeyPair(key);
+            }
+            throw new IllegalArgumentException("Unsupported key type, expected RSA, EC P-256 or Ed25519");
+        } catch (GeneralSecurityException | JOSEException | IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid BFF session signing key", e);
+        }
+    }
+
+    /**
+     * Signs and verifies a probe, so a PUBLIC KEY block that does not belong to the private key fails at startup.
+     */
+    private static SessionKey checkKeyPair(SessionKey key) throws JOSEException {
+        JWSHeader header = new JWSHeader(key.algorithm());
+        byte[] probe = "bff-session-key-check".getBytes(StandardCharsets.US_ASCII);
+        if (!key.verifier().verify(header, probe, key.signer().sign(header, probe))) {
+            throw new IllegalArgumentException("PUBLIC KEY does not match PRIVATE KEY");
+        }
+        return key;
+    }
+
+    private static SessionKey rsaKey(KeyFactory keyFactory, RSAPrivateCrtKey privateKey) throws GeneralSecurityException {
+        RSAPublicKey publicKey = (RSAPublicKey) keyFactory.generatePublic(
+                new RSAPublicKeySpec(privateKey.getModulus(), privateKey.getPublicExponent()));
+        return new SessionKey(
+                keyId(publicKey.getEncoded()),
+                JWSAlgorithm.RS256,
+                new RSASSASigner(privateKey),
+                new RSASSAVerifier(publicKey));
+    }
+
+    private static SessionKey ecKey(ECPrivateKey privateKey, ECPublicKey publicKey) throws GeneralSecurityException, JOSEException {
+        if (privateKey.getParams().getCurve().getField().getFieldSize() != 256) {
+            throw new IllegalArgumentException("ES256 requires a P-256 key");
+        }
+        return new SessionKey(
+                keyId(publicKey.getEncoded()),
+                JWSAlgorithm.ES256,
+                new ECDSASigner(privateKey),
+                new ECDSAVerifier(publicKey));
+    }
+
+    private static SessionKey edDsaKey(PrivateKey privateKey, PublicKey publicKey) throws GeneralSecurityException {
+        return new SessionKey(
+                keyId(publicKey.getEncoded()),
+                JWSAlgorithm.EdDSA,
+                new EdDsaJca.Signer(privateKey),
+                new EdDsaJca.Verifier(publicKey));
+    }
+
+    private static SessionKey hmacKey(byte[] secret) throws GeneralSecurityException, JOSEException {
+        if (secret.length < 32) {
+            throw new IllegalArgumentException("HS256 requires a secret of at least 256 bits");
+        }
+        return new SessionKey(
+                keyId(secret),
+                JWSAlgorithm.HS256,
+                new MACSigner(secret),
+                new MACVerifier(secret));
+    }
+
+    /**
+     * The public half of an EC or Ed25519 key, which the JDK cannot derive from the private key.
+     */
+    private static PublicKey publicKey(KeyFactory keyFactory, byte[] publicDer, String algorithm) throws GeneralSecurityException {
+        if (publicDer == null) {
+            throw new IllegalArgumentException(algorithm + " keys need a PUBLIC KEY block next to the PRIVATE KEY block");
+        }
+        return keyFactory.generatePublic(new X509EncodedKeySpec(publicDer));
+    }
+
+    private static byte[] pemBlock(String pem, String label) {
+        Matcher matcher = Pattern.compile("-----BEGIN " + label + "-----(.*?)-----END " + label + "-----", Pattern.DOTALL)
+                .matcher(pem);
+        return matcher.find() ? Base64.getDecoder().decode(matcher.group(1).replaceAll("\\s", "")) : null;
+    }
+
+    /**
+     * Derives a short, stable key id from the SHA-256 digest of the encoded public key (or HMAC secret).
+     */
+    private static String keyId(byte[] keyMaterial) throws GeneralSecurityException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(keyMaterial);
+        return Base64URL.encode(digest).toString().substring(0, 16);
+    }
+
+    /**
+     * A parsed signing key with its pre-built signer and verifier.
+     * Nimbus signers and verifiers are thread-safe and can be shared across requests.
+     */
+    public record SessionKey(String kid, JWSAlgorithm algorithm, JWSSigner signer, JWSVerifier verifier) {
+    }
+}
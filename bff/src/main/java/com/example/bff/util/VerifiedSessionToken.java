@@ -0,0 +1,92 @@
+package com.example.bff.util;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Result of a successful BFF_SESSION JWT verification (signature or decryption, expiry and issuer).
+ *
+ * @param jti       Session id, used as the Redis key
+ * @param subject   Subject the session was issued to
+ * @param issuedAt  When the session JWT was issued
+ * @param expiresAt When the session JWT expires
+ * @param claims    Full verified claim set
+ */
+public record VerifiedSessionToken(String jti, String subject, Instant issuedAt, Instant expiresAt, JWTClaimsSet claims) {
+
+    public boolean isExpired(Instant now) {
+        return !now.isBefore(expiresAt);
+    }
+
+    /**
+     * Login time of the session ({@code auth_time}); tokens issued before the claim existed fall back to {@code iat}.
+     */
+    public Instant authTime() {
+        Object authTime = claims != null ? claims.getClaim(JwtUtils.AUTH_TIME) : null;
+        if (authTime instanceof Number seconds) {
+            return Instant.ofEpochSecond(seconds.longValue());
+        }
+        return issuedAt;
+    }
+
+    /**
+     * Login time in epoch milliseconds, for comparing against revocations made in the same second.
+     * Tokens issued before the millisecond claim existed count as logged in at the start of their
+     * {@code auth_time} second.
+     *
+     * @return {@code null} if the token carries no login time at all
+     */
+    public Long authTimeMillis() {
+        if (claims == null) {
+            return null;
+        }
+        if (claims.getClaim(JwtUtils.AUTH_TIME_MILLIS) instanceof Number millis) {
+            return millis.longValue();
+        }
+        if (claims.getClaim(JwtUtils.AUTH_TIME) instanceof Number seconds) {
+            return seconds.longValue() * 1000;
+        }
+        return null;
+    }
+
+    /**
+     * Whether this is an encrypted session cookie carrying the access token.
+     */
+    public boolean carriesAccessToken() {
+        return claims != null && claims.getClaim(JwtUtils.ACCESS_TOKEN) instanceof String;
+    }
+
+    /**
+     * The access token carried by an encrypted session cookie, {@code null} for signed cookies.
+     */
+    public OAuth2AccessToken accessToken() {
+        if (!carriesAccessToken()) {
+            return null;
+        }
+        Set<String> scopes = new HashSet<>();
+        if (claims.getClaim(JwtUtils.SCOPE) instanceof Collection<?> values) {
+            values.forEach(scope -> scopes.add(String.valueOf(scope)));
+        }
+        return new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+                (String) claims.getClaim(JwtUtils.ACCESS_TOKEN),
+                epochSeconds(JwtUtils.ACCESS_TOKEN_ISSUED_AT),
+                epochSeconds(JwtUtils.ACCESS_TOKEN_EXPIRES_AT),
+                scopes);
+    }
+
+    /**
+     * Client registration the carried access token was issued for.
+     */
+    public String registrationId() {
+        return claims != null && claims.getClaim(JwtUtils.REGISTRATION_ID) instanceof String id ? id : null;
+    }
+
+    private Instant epochSeconds(String claim) {
+        return claims.getClaim(claim) instanceof Number seconds ? Instant.ofEpochSecond(seconds.longValue()) : null;
+    }
+}
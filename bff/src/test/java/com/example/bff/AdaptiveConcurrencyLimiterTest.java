@@ -0,0 +1,69 @@
+package com.example.bff;
+
+import com.example.bff.service.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    void shouldShedCallsAboveLimitWithRetryAfter() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(registry, true, 1, 1, 1, 1.5, 0.2, 1000, 2);
+
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // A slow call holds the only slot
+            executor.submit(() -> limiter.execute(() -> {
+                holding.countDown();
+                release.await();
+                return null;
+            }));
+            holding.await(5, TimeUnit.SECONDS);
+
+            AdaptiveConcurrencyLimiter.LimitExceededException rejected = assertThrows(
+                    AdaptiveConcurrencyLimiter.LimitExceededException.class, () -> limiter.execute(() -> "second"));
+            assertEquals(503, rejected.getStatusCode().value());
+            assertEquals(Duration.ofSeconds(2), rejected.getRetryAfter());
+            assertEquals(1.0, registry.get("bff.proxy.limit.inflight").gauge().value());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        assertEquals(1.0, registry.get("bff.proxy.limit.calls").tag("outcome", "rejected").counter().count());
+    }
+
+    @Test
+    void shouldShrinkLimitWhenLatencyRises() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(registry, true, 100, 10, 200, 1.5, 0.2, 0, 1);
+
+        // Healthy gateway under load: the limit grows
+        for (int i = 0; i < 200; i++) {
+            ReflectionTestUtils.invokeMethod(limiter, "onSample", TimeUnit.MILLISECONDS.toNanos(10), 90);
+        }
+        int healthyLimit = limiter.limit();
+        assertTrue(healthyLimit > 100);
+
+        // Latency five times the baseline: the limit backs off
+        for (int i = 0; i < 100; i++) {
+            ReflectionTestUtils.invokeMethod(limiter, "onSample", TimeUnit.MILLISECONDS.toNanos(50), healthyLimit);
+        }
+        assertTrue(limiter.limit() < healthyLimit * 0.6);
+        assertEquals(limiter.limit(), registry.get("bff.proxy.limit").gauge().value(), 1.0);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.bff;
+
+import com.example.bff.dto.BatchRequest.SubRequest;
+import com.example.bff.dto.BatchResponse;
+import com.example.bff.service.AdaptiveConcurrencyLimiter;
+import com.example.bff.service.BatchProxyService;
+import com.example.bff.service.CachingProxyService;
+import com.example.bff.service.DownstreamBulkheads;
+import com.example.bff.service.GatewayProxyService;
+import com.example.bff.service.RequestCoalescer;
+import com.example.bff.service.RequestHedger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class BatchProxyServiceTest {
+
+    private MockWebServer mockWebServer;
+    private CachingProxyService cachingProxyService;
+    private SimpleMeterRegistry registry;
+    private BatchProxyService batchService;
+
+    @BeforeEach
+    void setup() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return switch (request.getPath()) {
+                    case "/profile" -> new MockResponse()
+                            .addHeader("Content-Type", "application/json")
+                            .setBody("{\"name\":\"user\"}");
+                    case "/slow" -> new MockResponse()
+                            .setHeadersDelay(300, TimeUnit.MILLISECONDS)
+                            .setBody("slow");
+                    case "/orders" -> new MockResponse()
+                            .setResponseCode(201)
+                            .addHeader("Content-Type", "application/json")
+                            .setBody(request.getBody().readUtf8());
+                    default -> new MockResponse().setResponseCode(503).setBody("unavailable");
+                };
+            }
+        });
+        mockWebServer.start();
+
+        registry = new SimpleMeterRegistry();
+        cachingProxyService = mock(CachingProxyService.class);
+        DownstreamBulkheads bulkheads = new DownstreamBulkheads(
+                new MockEnvironment().withProperty("bff.proxy.bulkhead.slow.max-concurrent-calls", "1"), registry, true,
+                List.of("profile", "orders", "slow"), 10, 50L);
+        String gatewayUrl = mockWebServer.url("/").toString().replaceAll("/$", "");
+        batchService = new BatchProxyService(new GatewayProxyService(WebClient.builder(),
+                new RequestHedger(new SimpleMeterRegistry(), false, List.of(), 0.95, 10, 5),
+                new RequestCoalescer(new SimpleMeterRegistry(), false, 1048576, 5000),
+                new AdaptiveConcurrencyLimiter(new SimpleMeterRegistry(), false, 100, 20, 800, 1.5, 0.2, 1000, 1),
+                new SimpleMeterRegistry(), true),
+                cachingProxyService, bulkheads, registry, gatewayUrl, 20, 4);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    void shouldReturnEachSubResponseInOrderWithoutFailingTheBatch() {
+        BatchResponse response = batchService.execute(List.of(
+                new SubRequest("me", "GET", "/profile", null),
+                new SubRequest("create", "POST", "/bff/api/orders", Map.of("item", "book")),
+                new SubRequest("broken", "GET", "/reports", null),
+                new SubRequest("escape", "GET", "@evil.example/steal", null)), "jti-1", "token");
+
+        List<BatchResponse.SubResponse> results = response.getResponses();
+        assertEquals(4, results.size());
+
+        assertEquals("me", results.get(0).getId());
+        assertEquals(200, results.get(0).getStatus());
+        assertEquals("{\"name\":\"user\"}", results.get(0).getBody());
+
+        assertEquals(201, results.get(1).getStatus());
+        assertEquals("{\"item\":\"book\"}", results.get(1).getBody());
+
+        assertEquals(503, results.get(2).getStatus());
+        assertEquals("unavailable", results.get(2).getText());
+
+        assertEquals(400, results.get(3).getStatus());
+        assertEquals(3, mockWebServer.getRequestCount());
+
+        // The POST invalidates the session's cached GETs before and after it runs; latency is recorded per sub-request
+        verify(cachingProxyService, times(2)).invalidate("jti-1");
+        assertEquals(1, registry.get("bff.batch.subrequest").tags("downstream", "other").timer().count());
+    }
+
+    @Test
+    void shouldShedSubRequestsBeyondTheDownstreamBulkhead() {
+        BatchResponse response = batchService.execute(List.of(
+                new SubRequest("a", "GET", "/slow", null),
+                new SubRequest("b", "GET", "/slow", null),
+                new SubRequest("c", "GET", "/slow", null)), "jti-1", "token");
+
+        List<Integer> statuses = response.getResponses().stream().map(BatchResponse.SubResponse::getStatus).toList();
+        // One permit for the downstream; the others waited 50ms for it and were shed
+        assertEquals(1, statuses.stream().filter(status -> status == 200).count());
+        assertEquals(2, statuses.stream().filter(status -> status == 503).count());
+        assertEquals(1, mockWebServer.getRequestCount());
+        assertEquals(2, registry.get("bff.batch.subrequest").tags("downstream", "slow", "outcome", "rejected")
+                .timer().count());
+    }
+}
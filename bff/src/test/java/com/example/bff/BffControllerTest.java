@@ -0,0 +1,197 @@
+package com.example.bff;
+
+import com.example.bff.controller.BffController;
+import com.example.bff.service.BatchProxyService;
+import com.example.bff.service.CachingProxyService;
+import com.example.bff.service.ClusterMessaging;
+import com.example.bff.service.DownstreamBulkheads;
+import com.example.bff.service.EventStreamProxy;
+import com.example.bff.service.GatewayProxyService;
+import com.example.bff.service.LoginAuthorizedClientRepository;
+import com.example.bff.service.LoginPrefetchService;
+import com.example.bff.service.SessionContext;
+import com.example.bff.service.SessionContextResolver;
+import com.example.bff.service.SessionRedisService;
+import com.example.bff.service.SessionRevocationList;
+import com.example.bff.service.SlidingSessionService;
+import com.example.bff.service.UserDeletionListener;
+import com.example.bff.util.JwtUtils;
+import com.example.bff.util.VerifiedSessionToken;
+import com.example.common.core.constant.SessionConstants;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BffControllerTest {
+
+    private SessionRedisService sessionService;
+    private GatewayProxyService gatewayProxyService;
+    private CachingProxyService cachingProxyService;
+    private LoginAuthorizedClientRepository clientRepository;
+    private BffController controller;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        sessionService = mock(SessionRedisService.class);
+        gatewayProxyService = mock(GatewayProxyService.class);
+        cachingProxyService = mock(CachingProxyService.class);
+        DownstreamBulkheads bulkheads = mock(DownstreamBulkheads.class);
+        when(bulkheads.execute(anyString(), any())).thenAnswer(call -> ((Supplier<?>) call.getArgument(1)).get());
+
+        OAuth2AuthorizedClient client = mock(OAuth2AuthorizedClient.class);
+        when(client.getAccessToken()).thenReturn(new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+                "access-token", Instant.now(), Instant.now().plusSeconds(300)));
+        VerifiedSessionToken token = new VerifiedSessionToken("jti-1", "admin-1", Instant.now(),
+                Instant.now().plusSeconds(1800), null);
+        SessionContextResolver resolver = mock(SessionContextResolver.class);
+        when(resolver.resolve(any())).thenReturn(new SessionContext(SessionContext.Status.RESOLVED, token, client));
+
+        clientRepository = new LoginAuthorizedClientRepository(new SimpleMeterRegistry(), 100, 300);
+        SlidingSessionService slidingSessionService = mock(SlidingSessionService.class);
+        when(slidingSessionService.sessionCookie(any())).thenReturn(ResponseCookie.from("BFF_SESSION", "jwt").build());
+        controller = new BffController(clientRepository, sessionService, resolver,
+                mock(JwtUtils.class), gatewayProxyService, bulkheads, cachingProxyService,
+                mock(BatchProxyService.class), mock(EventStreamProxy.class), mock(LoginPrefetchService.class),
+                slidingSessionService, mock(SessionRevocationList.class), mock(Environment.class));
+        ReflectionTestUtils.setField(controller, "gatewayUrl", "http://gateway");
+        ReflectionTestUtils.setField(controller, "frontendUrl", "http://frontend");
+    }
+
+    @Test
+    void shouldRevokeSessionsOfUserDeletedThroughAdminService() {
+        when(gatewayProxyService.forward(any(), any(), anyString())).thenReturn(ResponseEntity.noContent().build());
+
+        ResponseEntity<?> response = controller.proxyRequest(new MockHttpServletRequest("DELETE", "/bff/api/admin/users/user-42"));
+
+        assertEquals(204, response.getStatusCode().value());
+        verify(sessionService).revokeAll("user-42");
+    }
+
+    @Test
+    void shouldRevokeSessionsOfUserDeletedThroughProfileService() {
+        when(gatewayProxyService.forward(any(), any(), anyString())).thenReturn(ResponseEntity.noContent().build());
+
+        controller.proxyRequest(new MockHttpServletRequest("DELETE", "/bff/api/profile/profile/admin/users/user-42"));
+
+        verify(sessionService).revokeAll("user-42");
+    }
+
+    @Test
+    void shouldKeepSessionsWhenDeletionFails() {
+        when(gatewayProxyService.forward(any(), any(), anyString())).thenReturn(ResponseEntity.status(500).build());
+
+        controller.proxyRequest(new MockHttpServletRequest("DELETE", "/bff/api/admin/users/user-42"));
+
+        verify(sessionService, never()).revokeAll(anyString());
+    }
+
+    @Test
+    void shouldDropCachedResponsesBeforeAndAfterWrite() {
+        when(gatewayProxyService.forward(any(), any(), anyString())).thenReturn(ResponseEntity.ok().build());
+
+        controller.proxyRequest(new MockHttpServletRequest("PUT", "/bff/api/profile/me"));
+
+        InOrder order = inOrder(cachingProxyService, gatewayProxyService);
+        order.verify(cachingProxyService).invalidate("jti-1");
+        order.verify(gatewayProxyService).forward(any(), any(), anyString());
+        order.verify(cachingProxyService).invalidate("jti-1");
+    }
+
+    @Test
+    void shouldRevokeSessionsOfUsersDeletedElsewhere() {
+        UserDeletionListener listener = new UserDeletionListener(sessionService, mock(ClusterMessaging.class));
+
+        listener.onMessage(new DefaultMessage(
+                SessionConstants.CHANNEL_USER_DELETED.getBytes(StandardCharsets.UTF_8),
+                "user-42".getBytes(StandardCharsets.UTF_8)), null);
+
+        verify(sessionService).revokeAll("user-42");
+    }
+
+    @Test
+    void shouldCompleteConcurrentLoginsOfSameUser() {
+        OAuth2AuthenticationToken auth = authentication("user-1");
+        MockHttpServletRequest laptop = loginRequest();
+        MockHttpServletRequest phone = loginRequest();
+        OAuth2AuthorizedClient laptopClient = client(auth, "access-laptop");
+        OAuth2AuthorizedClient phoneClient = client(auth, "access-phone");
+        clientRepository.saveAuthorizedClient(laptopClient, auth, laptop, new MockHttpServletResponse());
+        clientRepository.saveAuthorizedClient(phoneClient, auth, phone, new MockHttpServletResponse());
+
+        ResponseEntity<?> first = controller.loginSuccess(auth, laptop, new MockHttpServletResponse());
+        ResponseEntity<?> second = controller.loginSuccess(auth, phone, new MockHttpServletResponse());
+
+        assertEquals("http://frontend", first.getHeaders().getFirst(HttpHeaders.LOCATION));
+        assertEquals("http://frontend", second.getHeaders().getFirst(HttpHeaders.LOCATION));
+        verify(sessionService).create(anyString(), eq(laptopClient), isNull());
+        verify(sessionService).create(anyString(), eq(phoneClient), isNull());
+    }
+
+    @Test
+    void shouldSendLoginWithoutTokensBackToLoginPage() {
+        ResponseEntity<?> response = controller.loginSuccess(authentication("user-1"), loginRequest(),
+                new MockHttpServletResponse());
+
+        assertEquals(302, response.getStatusCode().value());
+        assertEquals("http://frontend/login?error=login_expired", response.getHeaders().getFirst(HttpHeaders.LOCATION));
+        verify(sessionService, never()).create(anyString(), any(), any());
+    }
+
+    private static OAuth2AuthenticationToken authentication(String subject) {
+        DefaultOAuth2User user = new DefaultOAuth2User(AuthorityUtils.createAuthorityList("OAUTH2_USER"),
+                Map.of("sub", subject), "sub");
+        return new OAuth2AuthenticationToken(user, user.getAuthorities(), "keycloak");
+    }
+
+    private static MockHttpServletRequest loginRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/bff/login/success");
+        request.setSession(new MockHttpSession());
+        return request;
+    }
+
+    private static OAuth2AuthorizedClient client(OAuth2AuthenticationToken auth, String accessTokenValue) {
+        ClientRegistration registration = ClientRegistration.withRegistrationId("keycloak")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .clientId("bff-client")
+                .redirectUri("{baseUrl}/login/code")
+                .authorizationUri("http://auth")
+                .tokenUri("http://auth/token")
+                .build();
+        return new OAuth2AuthorizedClient(registration, auth.getName(), new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, accessTokenValue, Instant.now(), Instant.now().plusSeconds(300)));
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.bff;
+
+import com.example.bff.service.AdaptiveConcurrencyLimiter;
+import com.example.bff.service.CachingProxyService;
+import com.example.bff.service.GatewayProxyService;
+import com.example.bff.service.LocalClusterMessaging;
+import com.example.bff.service.LoginPrefetchService;
+import com.example.bff.service.ProxyResponseCache;
+import com.example.bff.service.RequestCoalescer;
+import com.example.bff.service.RequestHedger;
+import com.example.bff.service.StaleResponseStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+class CachingProxyServiceTest {
+
+    private static final String PROFILE = "{\"name\":\"user\"}";
+
+    private MockWebServer mockWebServer;
+    private SimpleMeterRegistry registry;
+    private ProxyResponseCache cache;
+    private GatewayProxyService gatewayProxyService;
+    private CachingProxyService cachingProxy;
+    private URI profileUri;
+
+    @BeforeEach
+    void setup() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        profileUri = URI.create(mockWebServer.url("/profile").toString());
+
+        registry = new SimpleMeterRegistry();
+        cache = new ProxyResponseCache(new LocalClusterMessaging(), registry,
+                true, List.of("/profile"), 1024 * 1024, 64 * 1024, 0L, 300L);
+        gatewayProxyService = new GatewayProxyService(WebClient.builder(),
+                new RequestHedger(new SimpleMeterRegistry(), false, List.of(), 0.95, 10, 5),
+                new RequestCoalescer(new SimpleMeterRegistry(), false, 1048576, 5000),
+                new AdaptiveConcurrencyLimiter(new SimpleMeterRegistry(), false, 100, 20, 800, 1.5, 0.2, 1000, 1),
+                new SimpleMeterRegistry(), true);
+        cachingProxy = new CachingProxyService(gatewayProxyService, cache,
+                new StaleResponseStore(registry, true, List.of("/profile=60"), 1024 * 1024, 3000));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    void shouldRevalidateWithEtagAndAnswerBrowserConditionalRequests() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .addHeader("Content-Type", "application/json")
+                .addHeader("ETag", "\"v1\"")
+                .setBody(PROFILE));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(304).addHeader("ETag", "\"v1\""));
+
+        // Miss: fetched and cached
+        ResponseEntity<?> first = cachingProxy.get(get(null), profileUri, "jti-1", "token");
+        assertEquals(200, first.getStatusCode().value());
+        assertArrayEquals(PROFILE.getBytes(StandardCharsets.UTF_8), (byte[]) first.getBody());
+        mockWebServer.takeRequest(1, TimeUnit.SECONDS);
+
+        // Stale (fresh-seconds=0): revalidated upstream, browser already has v1
+        ResponseEntity<?> second = cachingProxy.get(get("\"v1\""), profileUri, "jti-1", "token");
+        assertEquals(304, second.getStatusCode().value());
+        assertEquals("\"v1\"", mockWebServer.takeRequest(1, TimeUnit.SECONDS).getHeader(HttpHeaders.IF_NONE_MATCH));
+        assertEquals(2, mockWebServer.getRequestCount());
+    }
+
+    @Test
+    void shouldDropSessionEntriesAfterWrites() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .addHeader("Content-Type", "application/json")
+                .addHeader("ETag", "\"v1\"")
+                .setBody(PROFILE));
+        mockWebServer.enqueue(new MockResponse()
+                .addHeader("Content-Type", "application/json")
+                .addHeader("ETag", "\"v2\"")
+                .setBody("{\"name\":\"renamed\"}"));
+
+        cachingProxy.get(get(null), profileUri, "jti-1", "token");
+        mockWebServer.takeRequest(1, TimeUnit.SECONDS);
+
+        cachingProxy.invalidate("jti-1");
+
+        // No entry left to revalidate: plain GET
+        ResponseEntity<?> afterWrite = cachingProxy.get(get(null), profileUri, "jti-1", "token");
+        assertEquals("\"v2\"", afterWrite.getHeaders().getETag());
+        assertNull(mockWebServer.takeRequest(1, TimeUnit.SECONDS).getHeader(HttpHeaders.IF_NONE_MATCH));
+    }
+
+    @Test
+    void shouldDropOnlyTheWritingSessionsEntries() {
+        Instant freshUntil = Instant.now().plusSeconds(60);
+        cache.put("jti-1", "/profile", ProxyResponseCache.CachedResponse.tooLarge(freshUntil));
+        cache.put("jti-1", "/orders", ProxyResponseCache.CachedResponse.tooLarge(freshUntil));
+        cache.putPrefetched("jti-2", "/profile", ProxyResponseCache.CachedResponse.tooLarge(freshUntil));
+
+        cachingProxy.invalidate("jti-1");
+
+        assertNull(cache.get("jti-1", "/profile"));
+        assertNull(cache.get("jti-1", "/orders"));
+        assertNotNull(cache.get("jti-2", "/profile"));
+        // Stored again after the write: indexed afresh and dropped by the next one
+        cache.put("jti-1", "/profile", ProxyResponseCache.CachedResponse.tooLarge(freshUntil));
+        cachingProxy.invalidate("jti-1");
+        assertNull(cache.get("jti-1", "/profile"));
+    }
+
+    @Test
+    void shouldServeLastKnownGoodCopyWhenGatewayFails() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .addHeader("Content-Type", "application/json")
+                .setBody(PROFILE));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+
+        cachingProxy.get(get(null), profileUri, "jti-1", "token");
+
+        ResponseEntity<?> stale = cachingProxy.get(get(null), profileUri, "jti-1", "token");
+        assertEquals(200, stale.getStatusCode().value());
+        assertArrayEquals(PROFILE.getBytes(StandardCharsets.UTF_8), (byte[]) stale.getBody());
+        assertEquals("true", stale.getHeaders().getFirst(StaleResponseStore.STALE_HEADER));
+        assertEquals("110 - \"Response is Stale\"", stale.getHeaders().getFirst("Warning"));
+        assertEquals(1.0, registry.get("bff.proxy.stale.requests").tag("outcome", "served").counter().count());
+
+        // Other sessions have no copy of their own: the failure is passed on
+        mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+        ResponseEntity<?> failed = cachingProxy.get(get(null), profileUri, "jti-2", "token");
+        assertEquals(503, failed.getStatusCode().value());
+    }
+
+    @Test
+    void shouldServeLoginPrefetchWithoutCallingTheGateway() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .addHeader("Content-Type", "application/json")
+                .setBody(PROFILE));
+        String gatewayUrl = profileUri.toString().substring(0, profileUri.toString().length() - "/profile".length());
+        LoginPrefetchService prefetchService = new LoginPrefetchService(gatewayProxyService, cache, registry,
+                true, List.of("/profile", "/orders"), 2000, 30, gatewayUrl);
+
+        prefetchService.prefetch("jti-1", "token");
+        assertEquals("Bearer token", mockWebServer.takeRequest(1, TimeUnit.SECONDS).getHeader(HttpHeaders.AUTHORIZATION));
+        await(() -> registry.find("bff.prefetch.requests").tag("outcome", "stored").counter() != null);
+
+        // Fresh for the prefetch window even though fresh-seconds is 0
+        ResponseEntity<?> firstRender = cachingProxy.get(get(null), profileUri, "jti-1", "token");
+        assertEquals(200, firstRender.getStatusCode().value());
+        assertArrayEquals(PROFILE.getBytes(StandardCharsets.UTF_8), (byte[]) firstRender.getBody());
+        assertEquals(1, mockWebServer.getRequestCount());
+        assertEquals(1.0, registry.get("bff.prefetch.entries").tag("result", "used").counter().count());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static MockHttpServletRequest get(String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/bff/api/profile");
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.bff;
+
+import com.example.bff.service.DownstreamBulkheads;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DownstreamBulkheadsTest {
+
+    @Test
+    void shouldIsolateSlowDownstream() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("bff.proxy.bulkhead.orders.max-concurrent-calls", "1");
+        DownstreamBulkheads bulkheads = new DownstreamBulkheads(env, registry, true,
+                List.of("profile", "orders"), 10, 50L);
+
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // A slow orders call holds the only permit
+            executor.submit(() -> bulkheads.execute("orders", () -> {
+                holding.countDown();
+                release.await();
+                return null;
+            }));
+            holding.await(5, TimeUnit.SECONDS);
+
+            ResponseStatusException rejected = assertThrows(ResponseStatusException.class,
+                    () -> bulkheads.execute("orders", () -> "second"));
+            assertEquals(503, rejected.getStatusCode().value());
+
+            // Other downstreams are unaffected
+            assertEquals("ok", bulkheads.execute("profile", () -> "ok"));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        assertEquals(1.0, registry.get("bff.proxy.bulkhead.calls")
+                .tags("downstream", "orders", "outcome", "rejected").counter().count());
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.bff;
+
+import com.example.bff.service.AdaptiveConcurrencyLimiter;
+import com.example.bff.service.EventStreamProxy;
+import com.example.bff.service.GatewayProxyService;
+import com.example.bff.service.RequestCoalescer;
+import com.example.bff.service.RequestHedger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventStreamProxyTest {
+
+    private MockWebServer mockWebServer;
+    private SimpleMeterRegistry registry;
+    private EventStreamProxy eventStreamProxy;
+
+    @BeforeEach
+    void setup() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        registry = new SimpleMeterRegistry();
+        GatewayProxyService gatewayProxyService = new GatewayProxyService(WebClient.builder(),
+                new RequestHedger(registry, false, List.of(), 0.95, 10, 5),
+                new RequestCoalescer(registry, false, 1048576, 5000),
+                new AdaptiveConcurrencyLimiter(registry, true, 100, 20, 800, 1.5, 0.2, 1000, 1), registry, true);
+        eventStreamProxy = new EventStreamProxy(gatewayProxyService, registry, 1, 15, 30);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    void shouldRelayEventStreamsWithinConnectionLimit() {
+        mockWebServer.enqueue(new MockResponse()
+                .addHeader("Content-Type", "text/event-stream")
+                .setBody("data: {\"status\":\"SHIPPED\"}\n\n")
+                // Keeps the stream open for the duration of the test
+                .setBodyDelay(5, TimeUnit.SECONDS));
+        URI events = URI.create(mockWebServer.url("/orders/events").toString());
+
+        assertTrue(eventStreamProxy.accepts(eventSource()));
+        ResponseEntity<?> response = eventStreamProxy.relay(eventSource(), events, "access-token");
+
+        assertInstanceOf(ResponseBodyEmitter.class, response.getBody());
+        assertEquals("text/event-stream", response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE));
+        assertEquals(1.0, registry.get("bff.proxy.event-streams.active").gauge().value());
+        // Open streams hold no slot of the adaptive concurrency limit
+        assertEquals(0.0, registry.get("bff.proxy.limit.inflight").gauge().value());
+
+        ResponseStatusException rejected = assertThrows(ResponseStatusException.class,
+                () -> eventStreamProxy.relay(eventSource(), events, "access-token"));
+        assertEquals(503, rejected.getStatusCode().value());
+        assertEquals(1.0, registry.get("bff.proxy.event-streams.requests").tag("outcome", "rejected").counter().count());
+    }
+
+    @Test
+    void shouldStreamOtherContentTypesWithoutHoldingAConnectionSlot() {
+        mockWebServer.enqueue(new MockResponse()
+                .addHeader("Content-Type", "application/json")
+                .setBody("[]"));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/bff/api/orders");
+        request.addHeader(HttpHeaders.ACCEPT, "application/json");
+        assertFalse(eventStreamProxy.accepts(request));
+
+        ResponseEntity<?> response = eventStreamProxy.relay(eventSource(),
+                URI.create(mockWebServer.url("/orders").toString()), "access-token");
+
+        assertInstanceOf(StreamingResponseBody.class, response.getBody());
+        assertEquals(0.0, registry.get("bff.proxy.event-streams.active").gauge().value());
+    }
+
+    private static MockHttpServletRequest eventSource() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/bff/api/orders/events");
+        request.addHeader(HttpHeaders.ACCEPT, "text/event-stream");
+        return request;
+    }
+}
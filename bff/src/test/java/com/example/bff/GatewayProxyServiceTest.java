@@ -0,0 +1,251 @@
+package com.example.bff;
+
+import com.example.bff.service.AdaptiveConcurrencyLimiter;
+import com.example.bff.service.GatewayProxyService;
+import com.example.bff.service.RequestCoalescer;
+import com.example.bff.service.RequestHedger;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GatewayProxyServiceTest {
+
+    private MockWebServer mockWebServer;
+    private SimpleMeterRegistry registry;
+    private GatewayProxyService proxyService;
+
+    @BeforeEach
+    void setup() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        registry = new SimpleMeterRegistry();
+        RequestHedger hedger = new RequestHedger(registry, true, List.of("/profile"), 0.95, 10, 5);
+        RequestCoalescer coalescer = new RequestCoalescer(registry, true, 1024 * 1024, 1000);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(registry, true, 100, 20, 800, 1.5, 0.2, 1000, 1);
+        proxyService = new GatewayProxyService(WebClient.builder(), hedger, coalescer, limiter, registry, true);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    void shouldStreamBodiesAndPreserveUpstreamStatusAndHeaders() throws Exception {
+        byte[] export = new byte[1024 * 1024];
+        for (int i = 0; i < export.length; i++) {
+            export[i] = (byte) i;
+        }
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(201)
+                .addHeader("Content-Type", "application/octet-stream")
+                .addHeader("Cache-Control", "private, max-age=60")
+                .addHeader("ETag", "\"v1\"")
+                .addHeader("Set-Cookie", "upstream=1")
+                .setBody(new Buffer().write(export)));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/bff/api/orders/export");
+        request.setContentType("application/json");
+        request.setContent("{\"format\":\"csv\"}".getBytes(StandardCharsets.UTF_8));
+
+        ResponseEntity<StreamingResponseBody> response = proxyService.stream(
+                request, URI.create(mockWebServer.url("/orders/export").toString()), "access-token");
+
+        assertEquals(201, response.getStatusCode().value());
+        assertEquals("application/octet-stream", response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE));
+        assertEquals(String.valueOf(export.length), response.getHeaders().getFirst(HttpHeaders.CONTENT_LENGTH));
+        assertEquals("private, max-age=60", response.getHeaders().getFirst(HttpHeaders.CACHE_CONTROL));
+        assertEquals("\"v1\"", response.getHeaders().getFirst(HttpHeaders.ETAG));
+        assertNull(response.getHeaders().getFirst(HttpHeaders.SET_COOKIE));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertArrayEquals(export, out.toByteArray());
+
+        RecordedRequest upstream = mockWebServer.takeRequest(1, TimeUnit.SECONDS);
+        assertEquals("Bearer access-token", upstream.getHeader(HttpHeaders.AUTHORIZATION));
+        assertEquals("application/json", upstream.getHeader(HttpHeaders.CONTENT_TYPE));
+        assertEquals("{\"format\":\"csv\"}", upstream.getBody().readUtf8());
+    }
+
+    @Test
+    void shouldSendNoBodyForRequestsWithoutOne() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+        proxyService.buffer(new MockHttpServletRequest("DELETE", "/bff/api/orders/42"),
+                URI.create(mockWebServer.url("/orders/42").toString()), "access-token");
+
+        RecordedRequest upstream = mockWebServer.takeRequest(1, TimeUnit.SECONDS);
+        assertNull(upstream.getHeader(HttpHeaders.TRANSFER_ENCODING));
+        assertEquals(0, upstream.getBodySize());
+    }
+
+    @Test
+    void shouldPassThroughErrorResponses() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(404)
+                .addHeader("Content-Type", "application/json")
+                .setBody("{\"error\":\"not found\"}"));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/bff/api/orders/42");
+
+        ResponseEntity<StreamingResponseBody> response = proxyService.stream(
+                request, URI.create(mockWebServer.url("/orders/42").toString()), "access-token");
+
+        assertEquals(404, response.getStatusCode().value());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertEquals("{\"error\":\"not found\"}", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void shouldPassCompressedBodiesThroughUntouched() throws Exception {
+        byte[] orders = "{\"orders\":[]}".repeat(200).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(orders);
+        }
+        mockWebServer.enqueue(new MockResponse()
+                .addHeader("Content-Type", "application/json")
+                .addHeader("Content-Encoding", "gzip")
+                .addHeader("Vary", "Accept-Encoding")
+                .setBody(new Buffer().write(gzipped.toByteArray())));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/bff/api/orders");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br");
+
+        ResponseEntity<StreamingResponseBody> response = proxyService.stream(
+                request, URI.create(mockWebServer.url("/orders").toString()), "access-token");
+
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertArrayEquals(gzipped.toByteArray(), out.toByteArray());
+
+        assertEquals("gzip, deflate, br", mockWebServer.takeRequest(1, TimeUnit.SECONDS).getHeader(HttpHeaders.ACCEPT_ENCODING));
+        assertEquals(gzipped.size(), registry.get("bff.proxy.response.bytes")
+                .tags("encoding", "gzip", "kind", "wire").counter().count());
+        assertEquals(orders.length, registry.get("bff.proxy.response.bytes")
+                .tags("encoding", "gzip", "kind", "logical").counter().count());
+    }
+
+    @Test
+    void shouldShareOneUpstreamCallBetweenIdenticalConcurrentGets() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setHeadersDelay(300, TimeUnit.MILLISECONDS)
+                .addHeader("Content-Type", "application/json")
+                .setBody("{\"name\":\"User\"}"));
+        URI profile = URI.create(mockWebServer.url("/profile").toString());
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<String>> responses = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                responses.add(executor.submit(() -> {
+                    ResponseEntity<StreamingResponseBody> response = proxyService.stream(
+                            new MockHttpServletRequest("GET", "/bff/api/profile"), profile, "access-token");
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    response.getBody().writeTo(out);
+                    return out.toString(StandardCharsets.UTF_8);
+                }));
+            }
+            for (Future<String> response : responses) {
+                assertEquals("{\"name\":\"User\"}", response.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, mockWebServer.getRequestCount());
+        assertEquals(2.0, registry.get("bff.proxy.coalescing.requests").tag("outcome", "shared").counter().count());
+        // Only the call that reached the gateway counts against the concurrency limit
+        assertEquals(1.0, registry.get("bff.proxy.limit.calls").tag("outcome", "permitted").counter().count());
+    }
+
+    @Test
+    void shouldStopWaitingForStuckFlightAfterJoinTimeout() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setHeadersDelay(3, TimeUnit.SECONDS).setBody("slow"));
+        mockWebServer.enqueue(new MockResponse().setBody("direct"));
+        URI orders = URI.create(mockWebServer.url("/orders").toString());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> leader = executor.submit(() -> {
+                ResponseEntity<StreamingResponseBody> response = proxyService.stream(
+                        new MockHttpServletRequest("GET", "/bff/api/orders"), orders, "access-token");
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                response.getBody().writeTo(out);
+                return out.toString(StandardCharsets.UTF_8);
+            });
+            mockWebServer.takeRequest(1, TimeUnit.SECONDS);
+
+            long start = System.nanoTime();
+            ResponseEntity<StreamingResponseBody> joiner = proxyService.stream(
+                    new MockHttpServletRequest("GET", "/bff/api/orders"), orders, "access-token");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            joiner.getBody().writeTo(out);
+
+            // Answered by its own call after the 1s join timeout, not by the 3s flight
+            assertEquals("direct", out.toString(StandardCharsets.UTF_8));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(2500));
+            assertEquals(1.0, registry.get("bff.proxy.coalescing.requests").tag("outcome", "fallback").counter().count());
+            assertEquals("slow", leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldHedgeSlowGetWithSecondAttempt() throws Exception {
+        URI profile = URI.create(mockWebServer.url("/profile/me").toString());
+        // Establish the route's latency; at 5% per request the 20th one has earned a hedge
+        for (int i = 0; i < 19; i++) {
+            mockWebServer.enqueue(new MockResponse().setBody("warm-up"));
+            proxyService.buffer(new MockHttpServletRequest("GET", "/bff/api/profile/me"), profile, "access-token");
+        }
+
+        mockWebServer.enqueue(new MockResponse().setHeadersDelay(5, TimeUnit.SECONDS).setBody("slow"));
+        mockWebServer.enqueue(new MockResponse().setBody("hedged"));
+
+        long start = System.nanoTime();
+        ResponseEntity<byte[]> response = proxyService.buffer(
+                new MockHttpServletRequest("GET", "/bff/api/profile/me"), profile, "access-token");
+
+        assertEquals("hedged", new String(response.getBody(), StandardCharsets.UTF_8));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(1.0, registry.get("bff.proxy.hedges").tags("route", "/profile", "outcome", "sent").counter().count());
+        assertEquals(1.0, registry.get("bff.proxy.hedges").tags("route", "/profile", "outcome", "won").counter().count());
+        // The hedge's win is not a latency sample; the cancelled first attempt is, as at least the hedge delay
+        Timer latency = registry.get("bff.proxy.hedge.latency").tag("route", "/profile").timer();
+        assertEquals(20, latency.count());
+        assertTrue(latency.max(TimeUnit.MILLISECONDS) >= 10);
+    }
+}
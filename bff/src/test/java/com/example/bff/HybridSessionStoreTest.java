@@ -0,0 +1,163 @@
+package com.example.bff;
+
+import com.example.bff.service.ClusterMessaging;
+import com.example.bff.service.HybridSessionStore;
+import com.example.bff.service.OffHeapSessionStore;
+import com.example.bff.service.RedisSessionExpiryIndex;
+import com.example.bff.service.RedisSessionStore;
+import com.example.bff.service.SessionCache;
+import com.example.bff.service.SessionCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@Testcontainers
+class HybridSessionStoreTest {
+
+    private static final String INVALIDATION_CHANNEL = "bff:session:invalidate";
+
+    @Container
+    static GenericContainer<?> redisContainer = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redis;
+
+    private ClientRegistration registration;
+    private RedisSessionStore redisStore;
+    private SessionCache sessionCache;
+    private ClusterMessaging messaging;
+    private HybridSessionStore store;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(redisContainer.getHost(), redisContainer.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setup() {
+        redis.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+        registration = ClientRegistration.withRegistrationId("keycloak")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .clientId("bff-client")
+                .clientSecret("secret")
+                .redirectUri("{baseUrl}/login/code")
+                .authorizationUri("http://auth")
+                .tokenUri("http://auth/token")
+                .build();
+        SessionCodec codec = new SessionCodec(new InMemoryClientRegistrationRepository(registration), "compact");
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(codec);
+        redisTemplate.afterPropertiesSet();
+
+        redisStore = new RedisSessionStore(redisTemplate, codec, new RedisSessionExpiryIndex(redis));
+        messaging = mock(ClusterMessaging.class);
+        sessionCache = new SessionCache(messaging, new SimpleMeterRegistry(), 100, 30);
+        store = new HybridSessionStore(redisStore,
+                new OffHeapSessionStore(codec, new SimpleMeterRegistry(), 1024 * 1024, Duration.ofSeconds(60)),
+                sessionCache, messaging);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void shouldSubscribeToSessionInvalidations() {
+        verify(messaging).subscribe(eq(store), eq(INVALIDATION_CHANNEL));
+    }
+
+    @Test
+    void shouldReadThroughSessionsCreatedByOtherNodesAndKeepThemLocally() {
+        // Logged in through another BFF instance
+        redisStore.create("jti-1", client("access-1"), "id-token", Duration.ofMinutes(30));
+
+        assertEquals("access-1", store.load("jti-1").getAccessToken().getTokenValue());
+
+        // Served from the local copy from now on
+        redis.delete("bff:session:jti-1");
+        assertEquals("access-1", store.load("jti-1").getAccessToken().getTokenValue());
+    }
+
+    @Test
+    void shouldSkipItsOwnInvalidations() {
+        store.create("jti-1", client("access-1"), "id-token", Duration.ofMinutes(30));
+        store.update("jti-1", client("access-2"), Duration.ofMinutes(30));
+        redis.delete("bff:session:jti-1");
+        // What this node publishes after its own refresh
+        sessionCache.invalidate("jti-1");
+        ArgumentCaptor<String> published = ArgumentCaptor.forClass(String.class);
+        verify(messaging).publish(eq(INVALIDATION_CHANNEL), published.capture());
+
+        store.onMessage(invalidation(published.getValue()), null);
+
+        assertEquals("access-2", store.load("jti-1").getAccessToken().getTokenValue());
+    }
+
+    @Test
+    void shouldDropLocalCopiesOnInvalidationsOfOtherNodes() {
+        store.create("jti-1", client("access-1"), "id-token", Duration.ofMinutes(30));
+        store.create("jti-2", client("access-1"), "id-token", Duration.ofMinutes(30));
+        // Refreshed by another BFF instance
+        redisStore.update("jti-1", client("access-2"), Duration.ofMinutes(30));
+        redisStore.delete("jti-2");
+
+        store.onMessage(invalidation("other-node:jti-1,jti-2"), null);
+
+        assertEquals("access-2", store.load("jti-1").getAccessToken().getTokenValue());
+        assertNull(store.load("jti-2"));
+    }
+
+    private static DefaultMessage invalidation(String body) {
+        return new DefaultMessage(INVALIDATION_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private OAuth2AuthorizedClient client(String accessTokenValue) {
+        Instant now = Instant.now();
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, accessTokenValue, now, now.plusSeconds(300));
+        return new OAuth2AuthorizedClient(registration, "user", accessToken, new OAuth2RefreshToken("refresh-token", now));
+    }
+}
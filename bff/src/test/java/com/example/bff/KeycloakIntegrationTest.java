@@ -111,7 +111,7 @@ class KeycloakIntegrationTest {
         OAuth2AuthorizedClient authorizedClient = new OAuth2AuthorizedClient(
                 clientRegistration, "user", accessToken, refreshToken);
 
-        sessionService.save(jti, authorizedClient);
+        sessionService.create(jti, authorizedClient, null);
 
         // 3. Generate Session Cookie
         OidcIdToken idToken = new OidcIdToken("dummy-token-value", Instant.now(), Instant.now().plusSeconds(60), Map.of("sub", "user", "email", "user@example.com", "name", "User Name"));
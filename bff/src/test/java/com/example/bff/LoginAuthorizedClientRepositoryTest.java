@@ -0,0 +1,120 @@
+package com.example.bff;
+
+import com.example.bff.service.LoginAuthorizedClientRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoginAuthorizedClientRepositoryTest {
+
+    private final Authentication user = new TestingAuthenticationToken("user-1", null);
+
+    private SimpleMeterRegistry meterRegistry;
+    private ClientRegistration registration;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        registration = ClientRegistration.withRegistrationId("keycloak")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .clientId("bff-client")
+                .redirectUri("{baseUrl}/login/code")
+                .authorizationUri("http://auth")
+                .tokenUri("http://auth/token")
+                .build();
+    }
+
+    @Test
+    void shouldKeepConcurrentLoginsOfSameUserApart() {
+        LoginAuthorizedClientRepository repository = new LoginAuthorizedClientRepository(meterRegistry, 100, 300);
+        MockHttpServletRequest laptop = loginRequest();
+        MockHttpServletRequest phone = loginRequest();
+        OAuth2AuthorizedClient laptopClient = client("access-laptop");
+        OAuth2AuthorizedClient phoneClient = client("access-phone");
+        repository.saveAuthorizedClient(laptopClient, user, laptop, new MockHttpServletResponse());
+        repository.saveAuthorizedClient(phoneClient, user, phone, new MockHttpServletResponse());
+
+        repository.removeAuthorizedClient("keycloak", user, laptop, new MockHttpServletResponse());
+
+        assertNull(repository.loadAuthorizedClient("keycloak", user, laptop));
+        assertSame(phoneClient, repository.loadAuthorizedClient("keycloak", user, phone));
+    }
+
+    @Test
+    void shouldFindLoginAfterSessionIdChange() {
+        LoginAuthorizedClientRepository repository = new LoginAuthorizedClientRepository(meterRegistry, 100, 300);
+        MockHttpServletRequest request = loginRequest();
+        OAuth2AuthorizedClient client = client("access-1");
+        repository.saveAuthorizedClient(client, user, request, new MockHttpServletResponse());
+
+        // Session fixation protection runs after the code exchange
+        request.changeSessionId();
+
+        assertSame(client, repository.loadAuthorizedClient("keycloak", user, request));
+    }
+
+    @Test
+    void shouldBoundNumberOfPendingLogins() throws InterruptedException {
+        LoginAuthorizedClientRepository repository = new LoginAuthorizedClientRepository(meterRegistry, 2, 300);
+        for (int i = 0; i < 10; i++) {
+            repository.saveAuthorizedClient(client("access-" + i), user, loginRequest(), new MockHttpServletResponse());
+        }
+
+        // Caffeine evicts asynchronously
+        long deadline = System.currentTimeMillis() + 5000;
+        while (size() > 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(size() <= 2);
+        assertTrue(meterRegistry.get("cache.evictions").tag("cache", "bff.oauth2.authorized-clients")
+                .functionCounter().count() >= 8);
+    }
+
+    private double size() {
+        return meterRegistry.get("cache.size").tag("cache", "bff.oauth2.authorized-clients").gauge().value();
+    }
+
+    @Test
+    void shouldDropLoginsNeverPickedUp() {
+        LoginAuthorizedClientRepository repository = new LoginAuthorizedClientRepository(meterRegistry, 100, 0);
+        MockHttpServletRequest request = loginRequest();
+        repository.saveAuthorizedClient(client("access-1"), user, request, new MockHttpServletResponse());
+
+        assertNull(repository.loadAuthorizedClient("keycloak", user, request));
+    }
+
+    @Test
+    void shouldNotCreateSessionOnLoad() {
+        LoginAuthorizedClientRepository repository = new LoginAuthorizedClientRepository(meterRegistry, 100, 300);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/bff/login/success");
+
+        assertNull(repository.loadAuthorizedClient("keycloak", user, request));
+        assertNull(request.getSession(false));
+    }
+
+    private static MockHttpServletRequest loginRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/login/oauth2/code/keycloak");
+        request.setSession(new MockHttpSession());
+        return request;
+    }
+
+    private OAuth2AuthorizedClient client(String accessTokenValue) {
+        return new OAuth2AuthorizedClient(registration, "user-1", new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, accessTokenValue, Instant.now(), Instant.now().plusSeconds(300)));
+    }
+}
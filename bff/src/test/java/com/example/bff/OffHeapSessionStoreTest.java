@@ -0,0 +1,154 @@
+package com.example.bff;
+
+import com.example.bff.service.LocalSessionExpiryIndex;
+import com.example.bff.service.OffHeapSessionStore;
+import com.example.bff.service.SessionCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapSessionStoreTest {
+
+    private ClientRegistration registration;
+    private SimpleMeterRegistry meterRegistry;
+    private OffHeapSessionStore store;
+
+    @BeforeEach
+    void setup() {
+        registration = ClientRegistration.withRegistrationId("keycloak")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .clientId("bff-client")
+                .clientSecret("secret")
+                .redirectUri("{baseUrl}/login/code")
+                .authorizationUri("http://auth")
+                .tokenUri("http://auth/token")
+                .build();
+        SessionCodec codec = new SessionCodec(new InMemoryClientRegistrationRepository(registration), "compact");
+        meterRegistry = new SimpleMeterRegistry();
+        store = new OffHeapSessionStore(codec, meterRegistry, 1024 * 1024, Duration.ofSeconds(60));
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void shouldStoreSessionsOffHeap() {
+        store.create("jti-1", client("access-1"), "id-token", Duration.ofMinutes(30));
+
+        OAuth2AuthorizedClient loaded = store.load("jti-1");
+        assertNotNull(loaded);
+        assertEquals("access-1", loaded.getAccessToken().getTokenValue());
+        assertEquals("id-token", store.loadIdToken("jti-1"));
+        assertTrue(meterRegistry.get("bff.session.local.bytes").gauge().value() > 0);
+
+        store.delete("jti-1");
+        assertNull(store.load("jti-1"));
+        assertEquals(0.0, meterRegistry.get("bff.session.local.bytes").gauge().value());
+    }
+
+    @Test
+    void shouldKeepIdTokenAndTtlOnUpdate() {
+        store.create("jti-1", client("access-1"), "id-token", Duration.ofMinutes(30));
+
+        store.update("jti-1", client("access-2"), Duration.ofMinutes(30));
+
+        assertEquals("access-2", store.load("jti-1").getAccessToken().getTokenValue());
+        assertEquals("id-token", store.loadIdToken("jti-1"));
+        assertEquals(1.0, meterRegistry.get("bff.session.local.entries").gauge().value());
+    }
+
+    @Test
+    void shouldNotRecreateDeletedSessionOnUpdate() {
+        store.create("jti-1", client("access-1"), "id-token", Duration.ofMinutes(30));
+        store.delete("jti-1");
+
+        assertFalse(store.update("jti-1", client("access-2"), Duration.ofMinutes(30)));
+        assertNull(store.load("jti-1"));
+    }
+
+    @Test
+    void shouldExpireSessions() throws InterruptedException {
+        store.create("jti-1", client("access-1"), null, Duration.ofMillis(20));
+        Thread.sleep(50);
+
+        assertNull(store.load("jti-1"));
+        assertFalse(store.touch("jti-1", Duration.ofMinutes(30)));
+        assertEquals(1.0, meterRegistry.get("bff.session.local.evictions").tag("reason", "expired").counter().count());
+    }
+
+    @Test
+    void shouldEvictSessionsClosestToExpiryWhenFull() {
+        OffHeapSessionStore small = new OffHeapSessionStore(
+                new SessionCodec(new InMemoryClientRegistrationRepository(registration), "compact"),
+                meterRegistry, 300, Duration.ofSeconds(60));
+        small.create("short", client("access-1"), "x".repeat(150), Duration.ofMinutes(5));
+        small.create("long", client("access-2"), "x".repeat(150), Duration.ofMinutes(30));
+
+        assertNull(small.load("short"));
+        assertNotNull(small.load("long"));
+        small.close();
+    }
+
+    @Test
+    void shouldOrderEvictionByExtendedExpiry() {
+        OffHeapSessionStore small = new OffHeapSessionStore(
+                new SessionCodec(new InMemoryClientRegistrationRepository(registration), "compact"),
+                meterRegistry, 300, Duration.ofSeconds(60));
+        small.create("touched", client("access-1"), "x".repeat(150), Duration.ofMinutes(5));
+        assertTrue(small.touch("touched", Duration.ofMinutes(60)));
+        small.create("other", client("access-2"), "x".repeat(150), Duration.ofMinutes(30));
+
+        assertNotNull(small.load("touched"));
+        assertNull(small.load("other"));
+        assertEquals(1.0, meterRegistry.get("bff.session.local.evictions").tag("reason", "capacity").counter().count());
+        small.close();
+    }
+
+    @Test
+    void shouldFeedExpiryIndexOfBackgroundRefresh() {
+        LocalSessionExpiryIndex expiryIndex = new LocalSessionExpiryIndex();
+        OffHeapSessionStore indexed = new OffHeapSessionStore(
+                new SessionCodec(new InMemoryClientRegistrationRepository(registration), "compact"),
+                meterRegistry, 1024 * 1024, Duration.ofSeconds(60), expiryIndex);
+        indexed.create("jti-1", client("access-1"), null, Duration.ofMinutes(30));
+        indexed.create("jti-2", client("access-2"), null, Duration.ofMinutes(30));
+        indexed.delete("jti-2");
+
+        Instant horizon = Instant.now().plusSeconds(600);
+        assertNotNull(expiryIndex.earliestExpiry());
+        assertEquals(List.of("jti-1"), expiryIndex.claimDue(horizon, 10, Duration.ofSeconds(30)));
+        // Claimed until the refresh re-indexes it
+        assertTrue(expiryIndex.claimDue(Instant.now().plusSeconds(10), 10, Duration.ofSeconds(30)).isEmpty());
+
+        indexed.update("jti-1", client("access-3"), Duration.ofMinutes(30));
+        assertEquals(List.of("jti-1"), expiryIndex.claimDue(horizon, 10, Duration.ofSeconds(30)));
+        indexed.close();
+        assertNull(expiryIndex.earliestExpiry());
+    }
+
+    private OAuth2AuthorizedClient client(String accessTokenValue) {
+        Instant now = Instant.now();
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, accessTokenValue, now, now.plusSeconds(300));
+        return new OAuth2AuthorizedClient(registration, "user", accessToken, new OAuth2RefreshToken("refresh-token", now));
+    }
+}
@@ -1,8 +1,16 @@
 package com.example.bff;
 
 import com.example.bff.filter.TokenRefreshFilter;
+import com.example.bff.service.SessionContextResolver;
+import com.example.bff.service.SessionExpiryIndex;
 import com.example.bff.service.SessionRedisService;
+import com.example.bff.service.SessionRefreshScheduler;
+import com.example.bff.service.SessionRevocationList;
+import com.example.bff.service.SlidingSessionService;
+import com.example.bff.service.TokenRefreshService;
 import com.example.bff.util.JwtUtils;
+import com.example.bff.util.VerifiedSessionToken;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.http.Cookie;
 import okhttp3.mockwebserver.MockResponse;
@@ -15,6 +23,7 @@ import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
 import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.OAuth2AccessToken;
 import org.springframework.security.oauth2.core.OAuth2RefreshToken;
@@ -22,8 +31,16 @@ import org.springframework.web.reactive.function.client.WebClient;
 
 import java.io.IOException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.Mockito.*;
 
 class ProactiveTokenRefreshTest {
@@ -31,6 +48,7 @@ class ProactiveTokenRefreshTest {
     private MockWebServer mockWebServer;
     private SessionRedisService sessionService;
     private JwtUtils jwtUtils;
+    private TokenRefreshService refreshService;
     private TokenRefreshFilter filter;
 
     @BeforeEach
@@ -39,13 +57,19 @@ class ProactiveTokenRefreshTest {
         mockWebServer.start();
 
         sessionService = mock(SessionRedisService.class);
+        when(sessionService.save(anyString(), any())).thenReturn(true);
         jwtUtils = mock(JwtUtils.class);
 
         // Configure WebClient to hit MockWebServer
         WebClient.Builder builder = WebClient.builder().baseUrl(mockWebServer.url("/").toString());
 
         // Use 60 seconds as the refresh buffer (same as default in application.properties)
-        filter = new TokenRefreshFilter(sessionService, jwtUtils, builder, 60L);
+        SessionContextResolver resolver = new SessionContextResolver(jwtUtils, sessionService,
+                mock(SessionRevocationList.class), mock(ClientRegistrationRepository.class), new SimpleMeterRegistry());
+        // Cluster lease disabled: no Redis in this unit test, only in-node coalescing
+        refreshService = new TokenRefreshService(sessionService, builder, null, new SimpleMeterRegistry(),
+                60L, "redis", false, 10_000L, 3_000L, 5L, 300L);
+        filter = new TokenRefreshFilter(resolver, refreshService, mock(SlidingSessionService.class), 60L);
     }
 
     @AfterEach
@@ -63,7 +87,8 @@ class ProactiveTokenRefreshTest {
         FilterChain filterChain = mock(FilterChain.class);
 
         // 2. Mock JWT Extraction
-        when(jwtUtils.extractJti(anyString())).thenReturn("mock-jti");
+        when(jwtUtils.verify(anyString())).thenReturn(new VerifiedSessionToken(
+                "mock-jti", "user", Instant.now(), Instant.now().plusSeconds(1800), null));
 
         // 3. Mock Redis - Return client with expiring token
         ClientRegistration reg = ClientRegistration.withRegistrationId("keycloak")
@@ -108,4 +133,119 @@ class ProactiveTokenRefreshTest {
         // Verify Chain continued
         verify(filterChain).doFilter(request, response);
     }
+
+    @Test
+    void shouldCoalesceConcurrentRefreshesOfSameSession() throws Exception {
+        ClientRegistration reg = ClientRegistration.withRegistrationId("keycloak")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .clientId("bff-client")
+                .clientSecret("secret")
+                .redirectUri("{baseUrl}/login/code")
+                .authorizationUri("http://auth")
+                .tokenUri(mockWebServer.url("/token").toString())
+                .build();
+
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, "old-token", Instant.now(), Instant.now().plusSeconds(30));
+        OAuth2AuthorizedClient expiring = new OAuth2AuthorizedClient(
+                reg, "user", accessToken, new OAuth2RefreshToken("refresh-token", Instant.now()));
+
+        // Session store: returns whatever was saved last
+        AtomicReference<OAuth2AuthorizedClient> stored = new AtomicReference<>(expiring);
+        when(sessionService.load("mock-jti")).thenAnswer(inv -> stored.get());
+        doAnswer(inv -> {
+            stored.set(inv.getArgument(1));
+            return true;
+        }).when(sessionService).save(eq("mock-jti"), any());
+
+        // Slow Keycloak so that all callers overlap with the first refresh
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("{\"access_token\":\"new-access-token\",\"refresh_token\":\"new-refresh-token\",\"expires_in\":300}")
+                .addHeader("Content-Type", "application/json")
+                .setBodyDelay(300, TimeUnit.MILLISECONDS));
+
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<OAuth2AuthorizedClient>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> refreshService.refresh("mock-jti")));
+            }
+            for (Future<OAuth2AuthorizedClient> result : results) {
+                assertEquals("new-access-token", result.get(5, TimeUnit.SECONDS).getAccessToken().getTokenValue());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Only one refresh grant reached Keycloak
+        assertEquals(1, mockWebServer.getRequestCount());
+        verify(sessionService, times(1)).save(eq("mock-jti"), any());
+    }
+
+    @Test
+    void shouldNotRecreateSessionLoggedOutDuringRefresh() {
+        ClientRegistration reg = ClientRegistration.withRegistrationId("keycloak")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .clientId("bff-client")
+                .clientSecret("secret")
+                .redirectUri("{baseUrl}/login/code")
+                .authorizationUri("http://auth")
+                .tokenUri(mockWebServer.url("/token").toString())
+                .build();
+
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, "old-token", Instant.now(), Instant.now().plusSeconds(30));
+        when(sessionService.load("mock-jti")).thenReturn(new OAuth2AuthorizedClient(
+                reg, "user", accessToken, new OAuth2RefreshToken("refresh-token", Instant.now())));
+        // Logout deleted the session while the grant was in flight
+        when(sessionService.save(eq("mock-jti"), any())).thenReturn(false);
+
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("{\"access_token\":\"new-access-token\",\"refresh_token\":\"new-refresh-token\",\"expires_in\":300}")
+                .addHeader("Content-Type", "application/json"));
+
+        assertNull(refreshService.refresh("mock-jti"));
+    }
+
+    @Test
+    void shouldRefreshDueSessionsInBackground() throws Exception {
+        ClientRegistration reg = ClientRegistration.withRegistrationId("keycloak")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .clientId("bff-client")
+                .clientSecret("secret")
+                .redirectUri("{baseUrl}/login/code")
+                .authorizationUri("http://auth")
+                .tokenUri(mockWebServer.url("/token").toString())
+                .build();
+
+        // Expiring in 90 seconds: outside the request-path buffer, inside the scheduler lead
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, "old-token", Instant.now(), Instant.now().plusSeconds(90));
+        OAuth2AuthorizedClient expiring = new OAuth2AuthorizedClient(
+                reg, "user", accessToken, new OAuth2RefreshToken("refresh-token", Instant.now()));
+        when(sessionService.load("mock-jti")).thenReturn(expiring);
+        when(sessionService.reload("mock-jti")).thenReturn(expiring);
+        // Logged out since it was indexed
+        when(sessionService.reload("gone-jti")).thenReturn(null);
+
+        SessionExpiryIndex expiryIndex = mock(SessionExpiryIndex.class);
+        when(expiryIndex.claimDue(any(), anyInt(), any())).thenReturn(List.of("mock-jti", "gone-jti"));
+
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("{\"access_token\":\"new-access-token\",\"refresh_token\":\"new-refresh-token\",\"expires_in\":300}")
+                .addHeader("Content-Type", "application/json"));
+
+        SessionRefreshScheduler scheduler = new SessionRefreshScheduler(expiryIndex, sessionService, refreshService,
+                new SimpleMeterRegistry(), 120L, 50, 2, 30L);
+        try {
+            assertEquals(1, scheduler.refreshDue());
+        } finally {
+            scheduler.shutdown();
+        }
+
+        assertEquals(1, mockWebServer.getRequestCount());
+        verify(sessionService).save(eq("mock-jti"), any());
+        verify(expiryIndex).remove("gone-jti");
+    }
 }
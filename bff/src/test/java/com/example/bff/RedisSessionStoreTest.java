@@ -0,0 +1,245 @@
+package com.example.bff;
+
+import com.example.bff.service.RedisSessionExpiryIndex;
+import com.example.bff.service.RedisSessionStore;
+import com.example.bff.service.SessionCodec;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+@Testcontainers
+class RedisSessionStoreTest {
+
+    private static final String EXPIRY_INDEX = "bff:session:access-expiry";
+
+    @Container
+    static GenericContainer<?> redisContainer = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redis;
+
+    private ClientRegistration registration;
+    private RedisTemplate<String, Object> redisTemplate;
+    private RedisSessionStore store;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(redisContainer.getHost(), redisContainer.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setup() {
+        redis.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+        registration = ClientRegistration.withRegistrationId("keycloak")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .clientId("bff-client")
+                .clientSecret("secret")
+                .redirectUri("{baseUrl}/login/code")
+                .authorizationUri("http://auth")
+                .tokenUri("http://auth/token")
+                .build();
+        SessionCodec codec = new SessionCodec(new InMemoryClientRegistrationRepository(registration), "compact");
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(codec);
+        redisTemplate.afterPropertiesSet();
+        store = new RedisSessionStore(redisTemplate, codec, new RedisSessionExpiryIndex(redis));
+    }
+
+    @Test
+    void shouldStoreSessionWithIdToken() {
+        store.create("jti-1", client("access-1"), "id-token", Duration.ofMinutes(30));
+
+        OAuth2AuthorizedClient loaded = store.load("jti-1");
+        assertNotNull(loaded);
+        assertEquals("access-1", loaded.getAccessToken().getTokenValue());
+        assertEquals("id-token", store.loadIdToken("jti-1"));
+    }
+
+    @Test
+    void shouldNotRecreateDeletedSessionOnUpdate() {
+        store.create("jti-1", client("access-1"), "id-token", Duration.ofMinutes(30));
+        store.delete("jti-1");
+
+        assertFalse(store.update("jti-1", client("access-2"), Duration.ofMinutes(30)));
+        assertNull(store.load("jti-1"));
+        assertFalse(redis.hasKey("bff:session:jti-1"));
+    }
+
+    @Test
+    void shouldExtendSessionOnTouch() {
+        store.create("jti-1", client("access-1"), null, Duration.ofMinutes(5));
+
+        assertTrue(store.touch("jti-1", Duration.ofMinutes(30)));
+        assertTrue(redis.getExpire("bff:session:jti-1") > Duration.ofMinutes(5).toSeconds());
+        assertFalse(store.touch("jti-2", Duration.ofMinutes(30)));
+    }
+
+    @Test
+    void shouldDeleteManySessions() {
+        store.create("jti-1", client("access-1"), null, Duration.ofMinutes(30));
+        store.create("jti-2", client("access-2"), null, Duration.ofMinutes(30));
+        store.create("jti-3", client("access-3"), null, Duration.ofMinutes(30));
+
+        store.deleteAll(List.of("jti-1", "jti-2"));
+
+        assertNull(store.load("jti-1"));
+        assertNull(store.load("jti-2"));
+        assertNotNull(store.load("jti-3"));
+        assertEquals(1L, redis.opsForZSet().size(EXPIRY_INDEX));
+    }
+
+    @Test
+    void shouldStoreSessionAsOneHashWithExpiry() {
+        long before = Instant.now().toEpochMilli();
+        OAuth2AuthorizedClient client = client("access-1");
+        store.create("jti-1", client, "id-token", Duration.ofMinutes(30));
+
+        Map<Object, Object> hash = redis.opsForHash().entries("bff:session:jti-1");
+        assertEquals(Set.of("client", "id_token", "created_at"), hash.keySet());
+        assertEquals("id-token", hash.get("id_token"));
+        long createdAt = Long.parseLong((String) hash.get("created_at"));
+        assertTrue(createdAt >= before && createdAt <= Instant.now().toEpochMilli());
+        long ttl = redis.getExpire("bff:session:jti-1");
+        assertTrue(ttl > 0 && ttl <= Duration.ofMinutes(30).toSeconds());
+        // Written in the same round trip
+        assertEquals((double) client.getAccessToken().getExpiresAt().toEpochMilli(),
+                redis.opsForZSet().score(EXPIRY_INDEX, "jti-1"));
+        // No keys of the legacy layout
+        assertFalse(redis.hasKey("jti-1"));
+        assertFalse(redis.hasKey("jti-1:id_token"));
+    }
+
+    @Test
+    void shouldReplaceWholeHashOnCreate() {
+        store.create("jti-1", client("access-1"), "id-token", Duration.ofMinutes(30));
+        store.create("jti-1", client("access-2"), null, Duration.ofMinutes(30));
+
+        assertEquals(Set.of("client", "created_at"), redis.opsForHash().keys("bff:session:jti-1"));
+        assertEquals("access-2", store.load("jti-1").getAccessToken().getTokenValue());
+        assertNull(store.loadIdToken("jti-1"));
+    }
+
+    @Test
+    void shouldUpdateTokensKeepingIdTokenAndTtl() {
+        store.create("jti-1", client("access-1"), "id-token", Duration.ofMinutes(5));
+        Object createdAt = redis.opsForHash().get("bff:session:jti-1", "created_at");
+        OAuth2AuthorizedClient refreshed = client("access-2", Instant.now().plusSeconds(600));
+
+        assertTrue(store.update("jti-1", refreshed, Duration.ofMinutes(30)));
+
+        assertEquals("access-2", store.load("jti-1").getAccessToken().getTokenValue());
+        assertEquals("id-token", store.loadIdToken("jti-1"));
+        assertEquals(createdAt, redis.opsForHash().get("bff:session:jti-1", "created_at"));
+        assertTrue(redis.getExpire("bff:session:jti-1") <= Duration.ofMinutes(5).toSeconds());
+        assertEquals((double) refreshed.getAccessToken().getExpiresAt().toEpochMilli(),
+                redis.opsForZSet().score(EXPIRY_INDEX, "jti-1"));
+    }
+
+    @Test
+    void shouldUnindexMissingSessionOnUpdate() {
+        redis.opsForZSet().add(EXPIRY_INDEX, "jti-1", 1);
+
+        assertFalse(store.update("jti-1", client("access-1"), Duration.ofMinutes(30)));
+
+        assertFalse(redis.hasKey("bff:session:jti-1"));
+        assertNull(redis.opsForZSet().score(EXPIRY_INDEX, "jti-1"));
+    }
+
+    @Test
+    void shouldNeverLeaveSessionBehindWhenUpdateRacesDelete() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            String jti = "jti-" + i;
+            store.create(jti, client("access-1"), "id-token", Duration.ofMinutes(30));
+            CyclicBarrier start = new CyclicBarrier(2);
+            CompletableFuture<Void> update = CompletableFuture.runAsync(() -> {
+                await(start);
+                store.update(jti, client("access-2"), Duration.ofMinutes(30));
+            });
+            CompletableFuture<Void> delete = CompletableFuture.runAsync(() -> {
+                await(start);
+                store.delete(jti);
+            });
+            CompletableFuture.allOf(update, delete).get();
+
+            assertFalse(redis.hasKey("bff:session:" + jti));
+            assertNull(redis.opsForZSet().score(EXPIRY_INDEX, jti));
+        }
+    }
+
+    @Test
+    void shouldReadAndDeleteSessionsOfLegacyLayout() {
+        redisTemplate.opsForValue().set("jti-1", client("access-1"), Duration.ofMinutes(30));
+        redisTemplate.opsForValue().set("jti-1:id_token", "id-token", Duration.ofMinutes(30));
+
+        assertEquals("access-1", store.load("jti-1").getAccessToken().getTokenValue());
+        assertEquals("id-token", store.loadIdToken("jti-1"));
+
+        store.delete("jti-1");
+
+        assertNull(store.load("jti-1"));
+        assertNull(store.loadIdToken("jti-1"));
+        assertFalse(redis.hasKey("jti-1"));
+        assertFalse(redis.hasKey("jti-1:id_token"));
+    }
+
+    private OAuth2AuthorizedClient client(String accessTokenValue) {
+        return client(accessTokenValue, Instant.now().plusSeconds(300));
+    }
+
+    private OAuth2AuthorizedClient client(String accessTokenValue, Instant expiresAt) {
+        Instant now = Instant.now();
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, accessTokenValue, now, expiresAt);
+        return new OAuth2AuthorizedClient(registration, "user", accessToken, new OAuth2RefreshToken("refresh-token", now));
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+}
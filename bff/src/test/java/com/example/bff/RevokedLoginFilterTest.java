@@ -0,0 +1,79 @@
+package com.example.bff;
+
+import com.example.bff.filter.RevokedLoginFilter;
+import com.example.bff.service.LocalClusterMessaging;
+import com.example.bff.service.SessionRevocationList;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RevokedLoginFilterTest {
+
+    private SessionRevocationList revocationList;
+    private RevokedLoginFilter filter;
+
+    @BeforeEach
+    void setup() {
+        revocationList = new SessionRevocationList(null, new LocalClusterMessaging(),
+                new SimpleMeterRegistry(), "local", false, 30, 720);
+        filter = new RevokedLoginFilter(revocationList);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void shouldEndLoginOfRevokedUser() throws Exception {
+        login("user-1", Instant.now().minusSeconds(60));
+        revocationList.revokeSubject("user-1");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/bff/user");
+        MockHttpSession session = new MockHttpSession();
+        request.setSession(session);
+
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        assertTrue(session.isInvalid());
+    }
+
+    @Test
+    void shouldKeepLoginsOfOtherUsersAndLaterLogins() throws Exception {
+        revocationList.revokeSubject("user-1");
+        login("user-1", Instant.now().plusSeconds(1));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/bff/user");
+        MockHttpSession session = new MockHttpSession();
+        request.setSession(session);
+
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        assertNotNull(SecurityContextHolder.getContext().getAuthentication());
+        assertFalse(session.isInvalid());
+    }
+
+    private static void login(String subject, Instant issuedAt) {
+        OidcIdToken idToken = new OidcIdToken("id-token", issuedAt, issuedAt.plusSeconds(300), Map.of("sub", subject));
+        DefaultOidcUser user = new DefaultOidcUser(AuthorityUtils.createAuthorityList("OIDC_USER"), idToken);
+        SecurityContextHolder.getContext().setAuthentication(
+                new OAuth2AuthenticationToken(user, user.getAuthorities(), "keycloak"));
+    }
+}
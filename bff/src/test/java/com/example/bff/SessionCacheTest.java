@@ -0,0 +1,136 @@
+package com.example.bff;
+
+import com.example.bff.service.ClusterMessaging;
+import com.example.bff.service.SessionCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class SessionCacheTest {
+
+    private ClusterMessaging messaging;
+    private SessionCache sessionCache;
+
+    @BeforeEach
+    void setup() {
+        messaging = mock(ClusterMessaging.class);
+        sessionCache = new SessionCache(messaging, new SimpleMeterRegistry(), 100, 30);
+        ReflectionTestUtils.invokeMethod(sessionCache, "init");
+    }
+
+    @Test
+    void shouldLoadConcurrentMissesOnce() throws Exception {
+        OAuth2AuthorizedClient client = mock(OAuth2AuthorizedClient.class);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<OAuth2AuthorizedClient> first = executor.submit(() -> sessionCache.get("jti-1", jti -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return client;
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<OAuth2AuthorizedClient> second = executor.submit(() -> sessionCache.get("jti-1", jti -> {
+                loads.incrementAndGet();
+                return client;
+            }));
+            release.countDown();
+
+            assertSame(client, first.get(5, TimeUnit.SECONDS));
+            assertSame(client, second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldNotKeepLoadThatRacedAnInvalidation() throws Exception {
+        OAuth2AuthorizedClient previous = mock(OAuth2AuthorizedClient.class);
+        OAuth2AuthorizedClient refreshed = mock(OAuth2AuthorizedClient.class);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Reads the tokens from before the refresh
+            Future<OAuth2AuthorizedClient> staleLoad = executor.submit(() -> sessionCache.get("jti-1", jti -> {
+                loading.countDown();
+                await(release);
+                return previous;
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            // The refresh is written and invalidated while that load is still running
+            Future<?> invalidation = executor.submit(() -> sessionCache.invalidate("jti-1"));
+            Thread.sleep(100);
+            release.countDown();
+
+            assertSame(previous, staleLoad.get(5, TimeUnit.SECONDS));
+            invalidation.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertSame(refreshed, sessionCache.get("jti-1", jti -> refreshed));
+    }
+
+    @Test
+    void shouldInvalidateManySessionsWithOneMessage() {
+        OAuth2AuthorizedClient stale = mock(OAuth2AuthorizedClient.class);
+        OAuth2AuthorizedClient current = mock(OAuth2AuthorizedClient.class);
+        List<String> jtis = List.of("jti-1", "jti-2", "jti-3");
+        jtis.forEach(jti -> sessionCache.put(jti, stale));
+
+        sessionCache.invalidateAll(jtis);
+
+        verify(messaging, times(1)).publish(eq("bff:session:invalidate"), anyString());
+        jtis.forEach(jti -> assertSame(current, sessionCache.get(jti, loaded -> current)));
+    }
+
+    @Test
+    void shouldApplyBatchedInvalidationsOfOtherNodes() {
+        OAuth2AuthorizedClient stale = mock(OAuth2AuthorizedClient.class);
+        OAuth2AuthorizedClient current = mock(OAuth2AuthorizedClient.class);
+        sessionCache.put("jti-1", stale);
+        sessionCache.put("jti-2", stale);
+
+        sessionCache.onMessage(new DefaultMessage("bff:session:invalidate".getBytes(StandardCharsets.UTF_8),
+                "other-node:jti-1,jti-2".getBytes(StandardCharsets.UTF_8)), null);
+
+        assertSame(current, sessionCache.get("jti-1", jti -> current));
+        assertSame(current, sessionCache.get("jti-2", jti -> current));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
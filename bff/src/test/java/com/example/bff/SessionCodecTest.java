@@ -0,0 +1,79 @@
+package com.example.bff;
+
+import com.example.bff.service.SessionCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionCodecTest {
+
+    private ClientRegistration registration;
+    private SessionCodec codec;
+    private OAuth2AuthorizedClient client;
+
+    @BeforeEach
+    void setup() {
+        registration = ClientRegistration.withRegistrationId("keycloak")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .clientId("bff-client")
+                .clientSecret("secret")
+                .redirectUri("{baseUrl}/login/code")
+                .authorizationUri("http://auth")
+                .tokenUri("http://auth/token")
+                .build();
+        codec = new SessionCodec(new InMemoryClientRegistrationRepository(registration), "compact");
+
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, "access-token", now, now.plusSeconds(300), Set.of("openid", "email"));
+        OAuth2RefreshToken refreshToken = new OAuth2RefreshToken("refresh-token", now);
+        client = new OAuth2AuthorizedClient(registration, "user", accessToken, refreshToken);
+    }
+
+    @Test
+    void shouldRoundTripAuthorizedClient() {
+        OAuth2AuthorizedClient decoded = (OAuth2AuthorizedClient) codec.deserialize(codec.serialize(client));
+
+        assertNotNull(decoded);
+        assertSame(registration, decoded.getClientRegistration());
+        assertEquals("user", decoded.getPrincipalName());
+        assertEquals("access-token", decoded.getAccessToken().getTokenValue());
+        assertEquals(client.getAccessToken().getExpiresAt(), decoded.getAccessToken().getExpiresAt());
+        assertEquals(Set.of("openid", "email"), decoded.getAccessToken().getScopes());
+        assertNotNull(decoded.getRefreshToken());
+        assertEquals("refresh-token", decoded.getRefreshToken().getTokenValue());
+    }
+
+    @Test
+    void shouldBeMuchSmallerThanJdkSerialization() {
+        byte[] jdk = new JdkSerializationRedisSerializer().serialize(client);
+
+        assertTrue(codec.serialize(client).length * 5 < jdk.length);
+    }
+
+    @Test
+    void shouldReadLegacyJdkSerializedEntries() {
+        byte[] legacy = new JdkSerializationRedisSerializer().serialize(client);
+
+        OAuth2AuthorizedClient decoded = (OAuth2AuthorizedClient) codec.deserialize(legacy);
+
+        assertNotNull(decoded);
+        assertEquals("access-token", decoded.getAccessToken().getTokenValue());
+        assertEquals("id-token", codec.deserialize(new JdkSerializationRedisSerializer().serialize("id-token")));
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.bff;
+
+import com.example.bff.service.ClusterMessaging;
+import com.example.bff.service.RedisClusterMessaging;
+import com.example.bff.service.RedisSessionExpiryIndex;
+import com.example.bff.service.RedisSessionStore;
+import com.example.bff.service.RedisSubjectSessionIndex;
+import com.example.bff.service.SessionCache;
+import com.example.bff.service.SessionCodec;
+import com.example.bff.service.SessionRedisService;
+import com.example.bff.service.SessionRevocationList;
+import com.example.bff.util.VerifiedSessionToken;
+import com.nimbusds.jwt.JWTClaimsSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@Testcontainers
+class SessionRedisServiceTest {
+
+    @Container
+    static GenericContainer<?> redisContainer = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redis;
+
+    private ClientRegistration registration;
+    private SessionRevocationList revocationList;
+    private SessionRedisService sessionService;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(redisContainer.getHost(), redisContainer.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setup() {
+        redis.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+        registration = ClientRegistration.withRegistrationId("keycloak")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .clientId("bff-client")
+                .clientSecret("secret")
+                .redirectUri("{baseUrl}/login/code")
+                .authorizationUri("http://auth")
+                .tokenUri("http://auth/token")
+                .build();
+        SessionCodec codec = new SessionCodec(new InMemoryClientRegistrationRepository(registration), "compact");
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(codec);
+        redisTemplate.afterPropertiesSet();
+
+        ClusterMessaging messaging = new RedisClusterMessaging(redis, mock(RedisMessageListenerContainer.class));
+        SessionCache sessionCache = new SessionCache(messaging, new SimpleMeterRegistry(), 100, 30);
+        ReflectionTestUtils.invokeMethod(sessionCache, "init");
+        revocationList = new SessionRevocationList(redis, messaging, new SimpleMeterRegistry(), "redis", false, 30, 720);
+        sessionService = new SessionRedisService(
+                new RedisSessionStore(redisTemplate, codec, new RedisSessionExpiryIndex(redis)),
+                sessionCache, new RedisSubjectSessionIndex(redis, Duration.ofMinutes(720)), revocationList, 30);
+    }
+
+    @Test
+    void shouldRevokeAndDeleteEverySessionOfSubject() {
+        Instant loggedIn = Instant.now();
+        sessionService.create("jti-1", client("user-1"), "id-token");
+        sessionService.create("jti-2", client("user-1"), "id-token");
+        sessionService.create("jti-3", client("user-2"), "id-token");
+        // Cached on this node as well
+        assertNotNull(sessionService.load("jti-1"));
+
+        sessionService.revokeAll("user-1");
+
+        assertNull(sessionService.load("jti-1"));
+        assertNull(sessionService.load("jti-2"));
+        assertNotNull(sessionService.load("jti-3"));
+        assertFalse(redis.hasKey("bff:session:jti-1"));
+        assertFalse(redis.hasKey("bff:session:jti-2"));
+        assertFalse(redis.hasKey("bff:session:by-subject:user-1"));
+        // Out of background refresh as well
+        assertNull(redis.opsForZSet().score("bff:session:access-expiry", "jti-1"));
+        assertEquals(1L, redis.opsForZSet().size("bff:session:access-expiry"));
+
+        assertTrue(revocationList.isRevoked(token("jti-1", "user-1", loggedIn.minusSeconds(1))));
+        assertFalse(revocationList.isRevoked(token("jti-3", "user-2", loggedIn.minusSeconds(1))));
+    }
+
+    @Test
+    void shouldRevokeSubjectWithoutStoredSessions() {
+        sessionService.revokeAll("user-1");
+
+        assertTrue(revocationList.isSubjectRevoked("user-1", Instant.now().minusSeconds(1).toEpochMilli()));
+    }
+
+    private OAuth2AuthorizedClient client(String principal) {
+        Instant now = Instant.now();
+        return new OAuth2AuthorizedClient(registration, principal,
+                new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "access-" + principal, now, now.plusSeconds(300)),
+                new OAuth2RefreshToken("refresh-" + principal, now));
+    }
+
+    private static VerifiedSessionToken token(String jti, String subject, Instant loggedIn) {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject(subject)
+                .claim("auth_time_ms", loggedIn.toEpochMilli())
+                .issueTime(Date.from(loggedIn))
+                .build();
+        return new VerifiedSessionToken(jti, subject, loggedIn, loggedIn.plusSeconds(1800), claims);
+    }
+}
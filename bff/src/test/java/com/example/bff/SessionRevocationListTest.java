@@ -0,0 +1,107 @@
+package com.example.bff;
+
+import com.example.bff.service.ClusterMessaging;
+import com.example.bff.service.SessionRevocationList;
+import com.example.bff.util.JwtUtils;
+import com.example.bff.util.VerifiedSessionToken;
+import com.nimbusds.jwt.JWTClaimsSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionRevocationListTest {
+
+    private StringRedisTemplate redis;
+    private ZSetOperations<String, String> zSet;
+    private SessionRevocationList revocationList;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        redis = mock(StringRedisTemplate.class);
+        zSet = mock(ZSetOperations.class);
+        when(redis.opsForZSet()).thenReturn(zSet);
+        revocationList = new SessionRevocationList(redis, mock(ClusterMessaging.class),
+                new SimpleMeterRegistry(), "redis", false, 30, 720);
+    }
+
+    @Test
+    void shouldRevokeEverySessionOfSubjectLoggedInBeforeTheEpoch() {
+        Instant earlier = Instant.now().minus(1, ChronoUnit.HOURS);
+        VerifiedSessionToken laptop = token("jti-1", "user-1", earlier);
+        VerifiedSessionToken phone = token("jti-2", "user-1", earlier.plusSeconds(60));
+        VerifiedSessionToken otherUser = token("jti-3", "user-2", earlier);
+
+        revocationList.revokeSubject("user-1");
+
+        assertTrue(revocationList.isRevoked(laptop));
+        assertTrue(revocationList.isRevoked(phone));
+        assertFalse(revocationList.isRevoked(otherUser));
+        // Logging in again after the revocation works
+        assertFalse(revocationList.isRevoked(token("jti-4", "user-1", Instant.now().plusMillis(1))));
+        // A single entry, not one per session
+        verify(zSet).add(eq("bff:session:revoked-subjects"), eq("user-1"), anyDouble());
+    }
+
+    @Test
+    void shouldApplySubjectRevocationsPublishedByOtherNodes() {
+        VerifiedSessionToken session = token("jti-1", "user-1", Instant.now().minus(1, ChronoUnit.HOURS));
+        long epoch = System.currentTimeMillis();
+
+        revocationList.onMessage(new DefaultMessage(
+                "bff:session:revoked-subjects".getBytes(StandardCharsets.UTF_8),
+                ("user-1:" + epoch).getBytes(StandardCharsets.UTF_8)), null);
+
+        assertTrue(revocationList.isRevoked(session));
+    }
+
+    @Test
+    void shouldCompareLoginTimesAtMillisecondPrecision() {
+        Instant epoch = Instant.parse("2026-01-01T10:00:00.500Z");
+        revocationList.onMessage(new DefaultMessage(
+                "bff:session:revoked-subjects".getBytes(StandardCharsets.UTF_8),
+                ("user-1:" + epoch.toEpochMilli()).getBytes(StandardCharsets.UTF_8)), null);
+
+        assertTrue(revocationList.isRevoked(token("jti-1", "user-1", epoch.minusMillis(300))));
+        // Logged in again within the same second, after the revocation
+        assertFalse(revocationList.isRevoked(token("jti-2", "user-1", epoch.plusMillis(200))));
+        // Issued before login times were recorded in milliseconds, or at all
+        assertTrue(revocationList.isRevoked(legacyToken("jti-3", "user-1", epoch.plusMillis(200), true)));
+        assertTrue(revocationList.isRevoked(legacyToken("jti-4", "user-1", epoch.plusSeconds(60), false)));
+    }
+
+    private static VerifiedSessionToken token(String jti, String subject, Instant authTime) {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .jwtID(jti)
+                .subject(subject)
+                .claim(JwtUtils.AUTH_TIME, authTime.getEpochSecond())
+                .claim(JwtUtils.AUTH_TIME_MILLIS, authTime.toEpochMilli())
+                .build();
+        return new VerifiedSessionToken(jti, subject, authTime, authTime.plus(30, ChronoUnit.MINUTES), claims);
+    }
+
+    private static VerifiedSessionToken legacyToken(String jti, String subject, Instant issuedAt, boolean withAuthTime) {
+        JWTClaimsSet.Builder claims = new JWTClaimsSet.Builder()
+                .jwtID(jti)
+                .subject(subject);
+        if (withAuthTime) {
+            claims.claim(JwtUtils.AUTH_TIME, issuedAt.getEpochSecond());
+        }
+        return new VerifiedSessionToken(jti, subject, issuedAt, issuedAt.plus(30, ChronoUnit.MINUTES), claims.build());
+    }
+}
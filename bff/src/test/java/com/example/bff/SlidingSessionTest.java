@@ -0,0 +1,98 @@
+package com.example.bff;
+
+import com.example.bff.service.SessionContext;
+import com.example.bff.service.SessionRedisService;
+import com.example.bff.service.SlidingSessionService;
+import com.example.bff.util.JwtUtils;
+import com.example.bff.util.VerifiedSessionToken;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class SlidingSessionTest {
+
+    private JwtUtils jwtUtils;
+    private SessionRedisService sessionService;
+    private SimpleMeterRegistry meterRegistry;
+    private SlidingSessionService slidingSessionService;
+
+    @BeforeEach
+    void setup() {
+        jwtUtils = mock(JwtUtils.class);
+        sessionService = mock(SessionRedisService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        slidingSessionService = new SlidingSessionService(jwtUtils, sessionService, meterRegistry,
+                true, 0.5, 30, 30, 60, false);
+        when(jwtUtils.reissueSessionJwt(any(), any(), any())).thenReturn("reissued.jwt");
+        when(sessionService.touch(eq("jti-1"), any())).thenReturn(true);
+    }
+
+    @Test
+    void shouldNotTouchSessionBeforeThreshold() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        slidingSessionService.touch(session(Instant.now().minus(Duration.ofMinutes(5))), response);
+
+        assertNull(response.getHeader(HttpHeaders.SET_COOKIE));
+        verifyNoInteractions(sessionService, jwtUtils);
+    }
+
+    @Test
+    void shouldExtendOnceAndReuseReissuedCookie() {
+        SessionContext context = session(Instant.now().minus(Duration.ofMinutes(20)));
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        MockHttpServletResponse second = new MockHttpServletResponse();
+
+        slidingSessionService.touch(context, first);
+        slidingSessionService.touch(context, second);
+
+        assertTrue(first.getHeader(HttpHeaders.SET_COOKIE).startsWith("BFF_SESSION=reissued.jwt"));
+        assertEquals(first.getHeader(HttpHeaders.SET_COOKIE), second.getHeader(HttpHeaders.SET_COOKIE));
+        verify(sessionService, times(1)).touch(eq("jti-1"), any());
+        verify(jwtUtils, times(1)).reissueSessionJwt(any(), any(), any());
+        assertEquals(1.0, meterRegistry.counter("bff.session.touches", "outcome", "extended").count());
+        assertEquals(1.0, meterRegistry.counter("bff.session.touches", "outcome", "reused").count());
+    }
+
+    @Test
+    void shouldNotExtendBeyondMaxLifetime() {
+        // Logged in 50 minutes ago with a 60 minute cap: the current token already expires at the cap
+        Instant login = Instant.now().minus(Duration.ofMinutes(50));
+        VerifiedSessionToken token = new VerifiedSessionToken("jti-1", "user",
+                login, login.plus(Duration.ofMinutes(60)), null);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        slidingSessionService.touch(new SessionContext(SessionContext.Status.RESOLVED, token, client()), response);
+
+        assertNull(response.getHeader(HttpHeaders.SET_COOKIE));
+        verifyNoInteractions(sessionService);
+        assertEquals(1.0, meterRegistry.counter("bff.session.touches", "outcome", "capped").count());
+    }
+
+    private static SessionContext session(Instant issuedAt) {
+        VerifiedSessionToken token = new VerifiedSessionToken("jti-1", "user",
+                issuedAt, issuedAt.plus(Duration.ofMinutes(30)), null);
+        return new SessionContext(SessionContext.Status.RESOLVED, token, client());
+    }
+
+    private static OAuth2AuthorizedClient client() {
+        OAuth2AuthorizedClient client = mock(OAuth2AuthorizedClient.class);
+        when(client.getAccessToken()).thenReturn(new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, "access-token", Instant.now(), Instant.now().plusSeconds(300)));
+        return client;
+    }
+}
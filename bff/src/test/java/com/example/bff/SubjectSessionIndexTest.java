@@ -0,0 +1,86 @@
+package com.example.bff;
+
+import com.example.bff.service.RedisSubjectSessionIndex;
+import com.example.bff.service.SubjectSessionIndex;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Testcontainers
+class SubjectSessionIndexTest {
+
+    @Container
+    static GenericContainer<?> redisContainer = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redis;
+
+    private SubjectSessionIndex index;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(redisContainer.getHost(), redisContainer.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setup() {
+        redis.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+        index = new RedisSubjectSessionIndex(redis, Duration.ofMinutes(720));
+    }
+
+    @Test
+    void shouldDrainAllSessionsOfSubjectOnce() {
+        index.track("user-1", "jti-1");
+        index.track("user-1", "jti-2");
+        index.track("user-2", "jti-3");
+
+        assertEquals(List.of("jti-1", "jti-2"), index.drain("user-1").stream().sorted().toList());
+        assertTrue(index.drain("user-1").isEmpty());
+        assertEquals(List.of("jti-3"), index.drain("user-2"));
+    }
+
+    @Test
+    void shouldDropSessionsPastTheirMaximumLifetimeOnLogin() {
+        // Logged in more than max-lifetime-minutes ago: the session cannot exist any more
+        long expired = System.currentTimeMillis() - 1000;
+        redis.opsForZSet().add("bff:session:by-subject:user-1", "jti-old", expired);
+
+        index.track("user-1", "jti-new");
+
+        assertEquals(1L, redis.opsForZSet().size("bff:session:by-subject:user-1"));
+        assertEquals(List.of("jti-new"), index.drain("user-1"));
+    }
+
+    @Test
+    void shouldExpireIndexWithItsNewestSession() {
+        index.track("user-1", "jti-1");
+
+        long ttl = redis.getExpire("bff:session:by-subject:user-1");
+        assertTrue(ttl > 0 && ttl <= 720 * 60);
+        assertFalse(index.drain("user-1").isEmpty());
+    }
+}
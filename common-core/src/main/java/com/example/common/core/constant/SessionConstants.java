@@ -8,4 +8,7 @@ public final class SessionConstants {
 
     public static final String COOKIE_BFF_SESSION = "BFF_SESSION";
     public static final String COOKIE_JSESSIONID = "JSESSIONID";
+
+    // Redis channel on which keycloak-admin-service publishes the id of each deleted user; the BFF revokes their sessions
+    public static final String CHANNEL_USER_DELETED = "bff:session:deleted-users";
 }
@@ -2,6 +2,7 @@ package com.example.adminservice.controller;
 
 import com.example.adminservice.dto.RegisterUserDTO;
 import com.example.adminservice.dto.UserDTO;
+import com.example.common.core.constant.SessionConstants;
 import jakarta.ws.rs.core.Response;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -15,6 +16,7 @@ import org.keycloak.representations.idm.UserRepresentation;
 
 import java.util.List;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -35,6 +37,7 @@ import java.util.Collections;
 public class AdminController {
 
     private final Keycloak keycloak;
+    private final StringRedisTemplate stringRedisTemplate;
 
     @Value("${keycloak.admin.realm}")
     private String realm;
@@ -132,10 +135,24 @@ public class AdminController {
         UsersResource usersResource = realmResource.users();
         try {
             usersResource.get(id).remove();
-            return ResponseEntity.noContent().build();
         } catch (Exception e) {
             log.error("Failed to delete user {}: {}", id, e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to delete user");
         }
+        publishDeleted(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Tells the BFF to revoke the deleted user's sessions at once, whichever service the deletion came
+     * through (admin UI, profile-service). Without it they only end when their tokens fail to refresh.
+     */
+    private void publishDeleted(String id) {
+        try {
+            stringRedisTemplate.convertAndSend(SessionConstants.CHANNEL_USER_DELETED, id);
+        } catch (Exception e) {
+            // The user is deleted; their sessions still end at the next token refresh
+            log.warn("Failed to publish deletion of user {}: {}", id, e.getMessage());
+        }
     }
 }